@@ -0,0 +1,78 @@
+package dk.mada.style.accept.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import dk.mada.style.fixture.TestBuilds;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that checkstyle results are reused from the build cache by a relocated build.
+ *
+ * The same build is generated in two directories, sharing a local build cache. Each build uses its own Gradle user
+ * home, so the extracted checkstyle configuration files are in different locations too. The second build must get
+ * its checkstyle result from the cache.
+ *
+ * The builds resolve checkstyle from Maven Central, so this needs network access.
+ */
+class CheckstyleRelocationTest {
+    /** The number of classes in the generated builds. */
+    private static final int CLASSES = 5;
+    /** The checkstyle task. */
+    private static final String CHECKSTYLE_TASK = ":checkstyleMain";
+
+    /** The directory the builds are generated in. */
+    @TempDir
+    private Path workDir;
+
+    @Test
+    void checkstyleResultIsReusedAfterRelocation() throws IOException {
+        Path cacheDir = workDir.resolve("build-cache");
+
+        BuildResult first = runCheckstyle(workDir.resolve("first"), cacheDir);
+        assertOutcome(TaskOutcome.SUCCESS, first);
+
+        BuildResult relocated = runCheckstyle(workDir.resolve("second"), cacheDir);
+        assertOutcome(TaskOutcome.FROM_CACHE, relocated);
+    }
+
+    private static BuildResult runCheckstyle(Path buildDir, Path cacheDir) throws IOException {
+        Path projectDir = buildDir.resolve("project");
+        TestBuilds.writeSingleModuleBuild(
+                projectDir,
+                CLASSES,
+                Map.of(
+                        "dk.mada.style.errorprone.enabled", "false",
+                        "dk.mada.style.null-checker.enabled", "false",
+                        "dk.mada.style.formatter.enabled", "false",
+                        "dk.mada.style.sonar.enabled", "false"));
+        TestBuilds.write(projectDir.resolve("settings.gradle"), """
+                rootProject.name = 'generated'
+
+                buildCache {
+                    local {
+                        directory = file('%s')
+                    }
+                }
+                """.formatted(cacheDir.toUri().getPath()));
+
+        return GradleRunner.create()
+                .withProjectDir(projectDir.toFile())
+                .withTestKitDir(buildDir.resolve("gradle-home").toFile())
+                .withPluginClasspath()
+                .withArguments(CHECKSTYLE_TASK, "--build-cache", "--stacktrace")
+                .build();
+    }
+
+    private static void assertOutcome(TaskOutcome expected, BuildResult result) {
+        BuildTask task = result.task(CHECKSTYLE_TASK);
+        assertEquals(expected, task == null ? null : task.getOutcome(), result.getOutput());
+    }
+}
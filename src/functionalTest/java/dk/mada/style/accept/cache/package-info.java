@@ -0,0 +1,4 @@
+/**
+ * Tests of build cache use in generated builds.
+ */
+package dk.mada.style.accept.cache;
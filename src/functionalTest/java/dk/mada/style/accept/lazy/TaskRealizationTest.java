@@ -0,0 +1,65 @@
+package dk.mada.style.accept.lazy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dk.mada.style.fixture.TestBuilds;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that the plugin only realizes the tasks needed by the invoked tasks.
+ *
+ * An init script records every realized task of a generated multi-module build, while a single task of one module is
+ * invoked. No tasks of the other modules may be realized, and only a few tasks of the invoked module.
+ *
+ * The tools that need dependencies from Maven Central are disabled, as the generated build declares no repositories.
+ */
+class TaskRealizationTest {
+    /** The number of modules in the generated build. */
+    private static final int MODULES = 200;
+    /** The maximal number of tasks realized in the invoked module. */
+    private static final int MAX_REALIZED_TASKS = 10;
+    /** The invoked module. */
+    private static final String MODULE_PATH = ":m0:";
+
+    /** The directory the build is generated in. */
+    @TempDir
+    private Path workDir;
+
+    @Test
+    void onlyInvokedTasksAreRealized() throws IOException {
+        TestBuilds.writeMultiModuleBuild(
+                workDir,
+                MODULES,
+                Map.of(
+                        "dk.mada.style.errorprone.enabled", "false",
+                        "dk.mada.style.null-checker.enabled", "false"));
+        Path initScript = TestBuilds.writeRealizationInitScript(workDir);
+
+        BuildResult result = GradleRunner.create()
+                .withProjectDir(workDir.toFile())
+                .withPluginClasspath()
+                .withArguments(
+                        MODULE_PATH + "compileJava",
+                        "--dry-run",
+                        "--stacktrace",
+                        "--init-script",
+                        initScript.toString())
+                .build();
+
+        List<String> realized = TestBuilds.realizedTasks(result.getOutput());
+        List<String> otherModules = realized.stream().filter(p -> !p.startsWith(MODULE_PATH)).toList();
+        assertEquals(List.of(), otherModules, "Tasks realized outside " + MODULE_PATH);
+        assertTrue(realized.contains(MODULE_PATH + "compileJava"), result.getOutput());
+        assertTrue(
+                realized.size() <= MAX_REALIZED_TASKS,
+                "Realized " + realized.size() + " tasks in " + MODULE_PATH + ": " + realized);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Tests of lazy configuration in generated builds.
+ */
+package dk.mada.style.accept.lazy;
@@ -0,0 +1,166 @@
+package dk.mada.style.accept.sonar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import dk.mada.style.fixture.TestBuilds;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests skipping of unchanged sonar analyses.
+ *
+ * The real scanner cannot run without a Sonar server, so the analysis is disabled (sonar.skip) and the generated
+ * build instead submits to a local stub server from the sonar task. The stub counts the submissions, and can be made
+ * to fail them.
+ */
+class SonarSkipUnchangedTest {
+    /** The address of the stub server. */
+    private static final String STUB_HOST = "127.0.0.1";
+    /** The path the submissions are posted to. */
+    private static final String SUBMIT_PATH = "/api/ce/submit";
+    /** The sonar task of the root project. */
+    private static final String SONAR_TASK = ":sonar";
+    /** The plugins block of the generated projects. */
+    private static final String BUILD_PLUGINS = """
+            plugins {
+                id 'java'
+                id 'dk.mada.style'
+            }
+            """;
+    /** The build script of the root project. */
+    private static final String BUILD_SCRIPT = BUILD_PLUGINS + """
+
+            // Stands in for the scanner, submitting to the stub server
+            tasks.named('sonar').configure {
+                def submitUrl = providers.gradleProperty('dk.mada.style.sonar.host.url').map { it + '%s' }
+                doFirst {
+                    def connection = (HttpURLConnection) URI.create(submitUrl.get()).toURL().openConnection()
+                    connection.requestMethod = 'POST'
+                    if (connection.responseCode != 200) {
+                        throw new GradleException('Submission failed: ' + connection.responseCode)
+                    }
+                }
+            }
+            """.formatted(SUBMIT_PATH);
+
+    /** The directory the build is generated in. */
+    @TempDir
+    private Path workDir;
+    /** The stub sonar server. */
+    private HttpServer server;
+    /** The number of submissions received by the stub server. */
+    private final AtomicInteger submissions = new AtomicInteger();
+    /** The response status of the stub server. */
+    private volatile int responseStatus = 200;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(STUB_HOST, 0), 0);
+        server.createContext(SUBMIT_PATH, exchange -> {
+            submissions.incrementAndGet();
+            exchange.sendResponseHeaders(responseStatus, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void unchangedAnalysisIsSkipped() throws IOException {
+        writeBuild(false);
+
+        assertOutcome(TaskOutcome.SUCCESS, runSonar());
+        assertOutcome(TaskOutcome.SKIPPED, runSonar());
+        assertEquals(1, submissions.get());
+
+        writeClass(workDir, "Changed");
+        assertOutcome(TaskOutcome.SUCCESS, runSonar());
+        assertEquals(2, submissions.get());
+    }
+
+    @Test
+    void failedAnalysisIsNotRecorded() throws IOException {
+        writeBuild(false);
+
+        responseStatus = 500;
+        runner().buildAndFail();
+        responseStatus = 200;
+
+        assertOutcome(TaskOutcome.SUCCESS, runSonar());
+        assertEquals(2, submissions.get());
+    }
+
+    @Test
+    void analysisIncludingSubprojectsIsNotSkipped() throws IOException {
+        writeBuild(true);
+
+        assertOutcome(TaskOutcome.SUCCESS, runSonar());
+        BuildResult result = runSonar();
+        assertOutcome(TaskOutcome.SUCCESS, result);
+        assertTrue(result.getOutput().contains("sonar.skip-unchanged ignored for :sonar"), result.getOutput());
+        assertEquals(2, submissions.get());
+    }
+
+    private static void assertOutcome(TaskOutcome expected, BuildResult result) {
+        BuildTask task = result.task(SONAR_TASK);
+        assertEquals(expected, task == null ? null : task.getOutcome(), result.getOutput());
+    }
+
+    private BuildResult runSonar() {
+        return runner().build();
+    }
+
+    private GradleRunner runner() {
+        return GradleRunner.create()
+                .withProjectDir(workDir.toFile())
+                .withPluginClasspath()
+                .withArguments(SONAR_TASK, "--stacktrace");
+    }
+
+    private void writeBuild(boolean withSubproject) throws IOException {
+        String settings = "rootProject.name = 'generated'\n";
+        if (withSubproject) {
+            settings += "include 'sub'\n";
+            TestBuilds.write(workDir.resolve("sub/build.gradle"), BUILD_PLUGINS);
+            writeClass(workDir.resolve("sub"), "Sub");
+        }
+        TestBuilds.write(workDir.resolve("settings.gradle"), settings);
+        TestBuilds.write(workDir.resolve("build.gradle"), BUILD_SCRIPT);
+        writeClass(workDir, "Root");
+
+        var properties = new StringBuilder();
+        Map.of(
+                        "dk.mada.style.checkstyle.enabled", "false",
+                        "dk.mada.style.errorprone.enabled", "false",
+                        "dk.mada.style.null-checker.enabled", "false",
+                        "dk.mada.style.formatter.enabled", "false",
+                        "dk.mada.style.sonar.skip-unchanged", "true",
+                        "dk.mada.style.sonar.skip", "true",
+                        "dk.mada.style.sonar.host.url", "http://" + STUB_HOST + ":" + server.getAddress().getPort())
+                .forEach((k, v) -> properties.append(k).append(" = ").append(v).append('\n'));
+        TestBuilds.write(workDir.resolve("gradle.properties"), properties.toString());
+    }
+
+    private static void writeClass(Path projectDir, String className) throws IOException {
+        TestBuilds.write(
+                projectDir.resolve("src/main/java/generated/" + className + ".java"),
+                "package generated;\n\n/** A generated class. */\npublic final class " + className + " {}\n");
+    }
+}
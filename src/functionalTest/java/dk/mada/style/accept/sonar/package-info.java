@@ -0,0 +1,4 @@
+/**
+ * Tests of the sonar configuration in generated builds.
+ */
+package dk.mada.style.accept.sonar;
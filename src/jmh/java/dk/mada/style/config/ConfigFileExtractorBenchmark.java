@@ -0,0 +1,103 @@
+package dk.mada.style.config;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the lookup of configuration files.
+ *
+ * The bundled checkstyle configuration is extracted once in the setup, so the benchmarks measure the warm path taken
+ * by every build in a daemon.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ConfigFileExtractorBenchmark {
+    /** The gradle logger. */
+    private static final Logger LOGGER = Logging.getLogger(ConfigFileExtractorBenchmark.class);
+    /** The bundled resource to look up. */
+    private static final String CHECKSTYLE_RESOURCE = "checkstyle/checkstyle-mada.xml";
+    /** A typical remote configuration URL. */
+    private static final String REMOTE_CONFIG_URL = "https://raw.githubusercontent.com/jskov/mada-style-gradle/main"
+            + "/src/main/resources/config/checkstyle/checkstyle-mada.xml";
+    /** The temporary gradle home dir. */
+    private Path gradleHomeDir = Path.of("");
+    /** The extractor shared by all invocations, as via ConfigFileExtractorService. */
+    private ConfigFileExtractor sharedExtractor = new ConfigFileExtractor(LOGGER, gradleHomeDir);
+
+    /**
+     * Extracts the bundled resource to a temporary gradle home dir.
+     *
+     * @throws IOException if the temporary directory cannot be created
+     */
+    @Setup
+    public void setup() throws IOException {
+        gradleHomeDir = Files.createTempDirectory("mada-style-jmh");
+        sharedExtractor = new ConfigFileExtractor(LOGGER, gradleHomeDir);
+        sharedExtractor.getLocalConfigFileFromResource(CHECKSTYLE_RESOURCE);
+    }
+
+    /**
+     * Deletes the temporary gradle home dir.
+     *
+     * @throws IOException if the directory cannot be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(gradleHomeDir)) {
+            for (Path f : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(f);
+            }
+        }
+    }
+
+    /**
+     * Looks up the bundled resource in a new extractor, as done once per build.
+     *
+     * @return the local file
+     */
+    @Benchmark
+    public Path resourceInNewExtractor() {
+        return new ConfigFileExtractor(LOGGER, gradleHomeDir).getLocalConfigFileFromResource(CHECKSTYLE_RESOURCE);
+    }
+
+    /**
+     * Looks up the bundled resource in a shared extractor, as done once per project.
+     *
+     * @return the local file
+     */
+    @Benchmark
+    public Path resourceInSharedExtractor() {
+        return sharedExtractor.getLocalConfigFileFromResource(CHECKSTYLE_RESOURCE);
+    }
+
+    /**
+     * Computes the checksum used to index a remote configuration file.
+     *
+     * @return the checksum
+     */
+    @Benchmark
+    public String urlChecksum() {
+        return ConfigFileExtractor.checksum(REMOTE_CONFIG_URL);
+    }
+}
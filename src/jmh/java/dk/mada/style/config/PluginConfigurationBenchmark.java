@@ -0,0 +1,68 @@
+package dk.mada.style.config;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the parsing of the plugin configuration.
+ *
+ * This happens once per build, and again for each project with its own dk.mada.style properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PluginConfigurationBenchmark {
+    /** The gradle logger. */
+    private static final Logger LOGGER = Logging.getLogger(PluginConfigurationBenchmark.class);
+    /** Properties of a build using the defaults. */
+    private static final Map<String, String> DEFAULT_PROPERTIES = Map.of();
+    /** Properties of a build tuning most options. */
+    private static final Map<String, String> TUNED_PROPERTIES = Map.ofEntries(
+            Map.entry("profile", "full"),
+            Map.entry("checkstyle.includes", "**/*.java, **/*.kt"),
+            Map.entry("checkstyle.excludes", "**/generated/**, **/module-info.java, **/package-info.java"),
+            Map.entry("checkstyle.parallelism", "4"),
+            Map.entry("errorprone.disabled-rules", "ImmutableEnumChecker, JavaTimeDefaultTimeZone, MissingSummary"),
+            Map.entry("errorprone.excluded-paths-regexp", ".*/build/generated/.*"),
+            Map.entry("errorprone.mode", "separate"),
+            Map.entry("formatter.include", "src/main/java/**/*.java, src/test/java/**/*.java"),
+            Map.entry("null-checker.include-packages", "dk, com.example"),
+            Map.entry("null-checker.exclude-packages", "dk.generated, com.example.api"),
+            Map.entry("null-checker.exclude-field-annotations", "javafx.fxml.FXML, org.junit.jupiter.api.io.TempDir"),
+            Map.entry("sonar.skip-unchanged", "true"),
+            Map.entry("report.timings", "true"));
+
+    /**
+     * Parses the configuration of a build using the defaults.
+     *
+     * @return the configuration
+     */
+    @Benchmark
+    public PluginConfiguration defaults() {
+        return new PluginConfiguration(DEFAULT_PROPERTIES, false, false, LOGGER);
+    }
+
+    /**
+     * Parses the configuration of a build tuning most options.
+     *
+     * @return the configuration
+     */
+    @Benchmark
+    public PluginConfiguration tuned() {
+        return new PluginConfiguration(TUNED_PROPERTIES, true, false, LOGGER);
+    }
+}
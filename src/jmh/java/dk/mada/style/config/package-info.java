@@ -0,0 +1,4 @@
+/**
+ * Benchmarks of the plugin configuration handling.
+ */
+package dk.mada.style.config;
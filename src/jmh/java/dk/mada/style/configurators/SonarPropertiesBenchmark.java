@@ -0,0 +1,65 @@
+package dk.mada.style.configurators;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the handling of the sonar properties.
+ *
+ * The properties are selected and merged for each project applying sonar, and again when the sonar task checks its
+ * inputs for changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SonarPropertiesBenchmark {
+    /** The Gradle properties prefixed with dk.mada.style.sonar. in a typical build. */
+    private static final Map<String, String> GRADLE_PROPERTIES = Map.of(
+            "dk.mada.style.sonar.enabled", "true",
+            "dk.mada.style.sonar.skip-unchanged", "true",
+            "dk.mada.style.sonar.projectKey", "jskov_mada-style-gradle",
+            "dk.mada.style.sonar.organization", "jskov",
+            "dk.mada.style.sonar.exclusions", "**/generated/**",
+            "dk.mada.style.sonar.coverage.exclusions", "**/fixture/**, **/accept/**");
+    /** The convention properties of the plugin. */
+    private static final Map<String, String> CONVENTION_PROPERTIES =
+            Map.of("sonar.host.url", "https://sonarcloud.io", "sonar.sourceEncoding", "UTF-8");
+    /** The default report paths. */
+    private static final Map<String, String> REPORT_PATHS = Map.of(
+            "sonar.java.checkstyle.reportPaths", "/work/project/build/reports/checkstyle/main.xml",
+            "sonar.coverage.jacoco.xmlReportPaths",
+                    "/work/project/build/reports/jacoco/test/jacocoTestReport.xml");
+
+    /**
+     * Selects the sonar properties configured via the plugin.
+     *
+     * @return the sonar properties
+     */
+    @Benchmark
+    public Map<String, String> selectInputProperties() {
+        return SonarConfigurator.sonarInputProperties(GRADLE_PROPERTIES);
+    }
+
+    /**
+     * Selects and merges the sonar properties, as done for each project.
+     *
+     * @return the merged sonar properties
+     */
+    @Benchmark
+    public Map<String, String> selectAndMerge() {
+        Map<String, String> inputProps = SonarConfigurator.sonarInputProperties(GRADLE_PROPERTIES);
+        return SonarConfigurator.mergeProperties(CONVENTION_PROPERTIES, REPORT_PATHS, inputProps);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Benchmarks of the plugin configurators.
+ */
+package dk.mada.style.configurators;
@@ -2,20 +2,33 @@ package dk.mada.style;
 
 import com.diffplug.gradle.spotless.SpotlessExtension;
 import com.diffplug.gradle.spotless.SpotlessPlugin;
-import dk.mada.style.config.ConfigFileExtractor;
+import dk.mada.style.changes.ChangedFilesService;
+import dk.mada.style.config.ConfigFileExtractorService;
 import dk.mada.style.config.PluginConfiguration;
+import dk.mada.style.config.StyleConfigurationService;
 import dk.mada.style.configurators.CheckstyleConfigurator;
 import dk.mada.style.configurators.ErrorProneConfigurator;
+import dk.mada.style.configurators.GeneratedSourceClassifier;
 import dk.mada.style.configurators.SonarConfigurator;
 import dk.mada.style.configurators.SpotlessConfigurator;
+import dk.mada.style.report.ErrorProneProfileService;
+import dk.mada.style.report.ToolTimingService;
 import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.inject.Inject;
 import net.ltgt.gradle.errorprone.ErrorPronePlugin;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.configuration.BuildFeatures;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.RegularFile;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.quality.CheckstyleExtension;
 import org.gradle.api.plugins.quality.CheckstylePlugin;
+import org.gradle.api.provider.Provider;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.jspecify.annotations.Nullable;
 import org.sonarqube.gradle.SonarExtension;
 import org.sonarqube.gradle.SonarQubePlugin;
 
@@ -23,9 +36,21 @@ import org.sonarqube.gradle.SonarQubePlugin;
  * A plugin defining the style used for dk.mada java code.
  */
 public final class MadaStylePlugin implements Plugin<Project> {
-    /** Constructs new instance. */
-    public MadaStylePlugin() {
-        // Explicit default constructor to avoid javadoc warning
+    /** The build events listener registry. */
+    private final BuildEventsListenerRegistry listenerRegistry;
+    /** The build features. */
+    private final BuildFeatures buildFeatures;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param listenerRegistry the build events listener registry
+     * @param buildFeatures    the build features
+     */
+    @Inject
+    public MadaStylePlugin(BuildEventsListenerRegistry listenerRegistry, BuildFeatures buildFeatures) {
+        this.listenerRegistry = listenerRegistry;
+        this.buildFeatures = buildFeatures;
     }
 
     @Override
@@ -37,12 +62,16 @@ public final class MadaStylePlugin implements Plugin<Project> {
         Logger logger = project.getLogger();
         logger.info("Applying mada.style plugin");
 
-        File gradleHomeDir = project.getGradle().getGradleHomeDir();
-        if (gradleHomeDir == null) {
-            gradleHomeDir = project.getLayout().getBuildDirectory().getAsFile().get();
-        }
-        var configuration = new PluginConfiguration(project);
-        var configExtractor = new ConfigFileExtractor(logger, gradleHomeDir.toPath());
+        boolean isolatedProjects = buildFeatures.getIsolatedProjects().getActive().getOrElse(false);
+        Provider<StyleConfigurationService> configurationService = StyleConfigurationService.register(
+                project.getGradle(), project.getProviders(), isolatedProjects, false);
+        var configuration =
+                configurationService.get().configurationFor(PluginConfiguration.readProjectProperties(project));
+        logger.info("Using mada.style profile {}", configuration.profile());
+        Provider<ConfigFileExtractorService> configExtractor = registerConfigFileExtractorService(project);
+        String changedSince = configuration.changedSince();
+        @Nullable Provider<ChangedFilesService> changedFiles =
+                changedSince == null ? null : registerChangedFilesService(project, changedSince);
 
         if (configuration.isCheckstyleActive()) {
             project.getPluginManager().apply("checkstyle");
@@ -50,20 +79,42 @@ public final class MadaStylePlugin implements Plugin<Project> {
             project.getPlugins()
                     .withType(
                             CheckstylePlugin.class,
-                            _ -> lazyConfigureCheckstyle(project, configuration, configExtractor));
+                            _ -> lazyConfigureCheckstyle(project, configuration, configExtractor, changedFiles));
         }
 
         if (configuration.isFormatterActive()) {
             project.getPluginManager().apply("com.diffplug.spotless");
+            if (configuration.formatter().predeclareDeps()
+                    && !configurationService.get().isFormatterPredeclared()) {
+                logger.warn("dk.mada.style predeclared formatter dependencies need the settings plugin and a"
+                        + " build-wide property, resolving them in {}", project.getPath());
+            }
 
-            project.getPlugins().withType(SpotlessPlugin.class, _ -> lazyConfigureFormatter(project, configuration));
+            project.getPlugins()
+                    .withType(SpotlessPlugin.class, _ -> lazyConfigureFormatter(project, configuration, changedFiles));
+        }
+
+        @Nullable Provider<ToolTimingService> timingService = null;
+        if (configuration.report().timings()) {
+            Provider<ToolTimingService> service = registerToolTimingService(project);
+            project.getTasks().configureEach(t -> ToolTimingService.track(t, service));
+            timingService = service;
         }
 
         if (configuration.isNullcheckerActive() || configuration.isErrorProneActive()) {
             project.getPluginManager().apply("net.ltgt.errorprone");
 
+            @Nullable Provider<ErrorProneProfileService> profileService =
+                    configuration.errorProne().profile() ? registerErrorProneProfileService(project) : null;
+            @Nullable Provider<ToolTimingService> errorProneTimingService = timingService;
+            boolean sharedToolClasspath = configurationService.get().isSharedToolClasspathAvailable();
             project.getPlugins().withType(ErrorPronePlugin.class, _ -> new ErrorProneConfigurator(
-                            project, configuration.errorProne(), configuration.nullchecker())
+                            project,
+                            configuration.errorProne(),
+                            configuration.nullchecker(),
+                            sharedToolClasspath,
+                            profileService,
+                            errorProneTimingService)
                     .configure());
         }
 
@@ -78,17 +129,126 @@ public final class MadaStylePlugin implements Plugin<Project> {
         }
     }
 
+    /**
+     * Provides the build directory of the root project.
+     *
+     * Only the directory of the root project is available with isolated projects, so then the root build directory is
+     * assumed to be in the default location. Otherwise the root project's (possibly relocated) build directory is
+     * used.
+     *
+     * @param project the project
+     * @return the root project build directory
+     */
+    private Provider<Directory> rootBuildDirectory(Project project) {
+        if (buildFeatures.getIsolatedProjects().getActive().getOrElse(false)) {
+            Directory rootProjectDir = project.getIsolated().getRootProject().getProjectDirectory();
+            return project.getProviders().provider(() -> rootProjectDir.dir("build"));
+        }
+        return project.getRootProject().getLayout().getBuildDirectory();
+    }
+
+    /**
+     * Registers the build service providing configuration files.
+     *
+     * The service is shared by all projects in the build, so only the first project to register it provides the
+     * parameters.
+     *
+     * @param project the project
+     * @return the build service provider
+     */
+    private Provider<ConfigFileExtractorService> registerConfigFileExtractorService(Project project) {
+        return project.getGradle()
+                .getSharedServices()
+                .registerIfAbsent(ConfigFileExtractorService.SERVICE_NAME, ConfigFileExtractorService.class, spec -> {
+                    File gradleHomeDir = project.getGradle().getGradleHomeDir();
+                    if (gradleHomeDir != null) {
+                        spec.getParameters().getStorageDir().set(gradleHomeDir);
+                    } else {
+                        spec.getParameters().getStorageDir().set(rootBuildDirectory(project));
+                    }
+                });
+    }
+
+    /**
+     * Registers the build service providing the files changed relative to a git reference.
+     *
+     * @param project   the project
+     * @param reference the git reference
+     * @return the build service provider
+     */
+    private Provider<ChangedFilesService> registerChangedFilesService(Project project, String reference) {
+        return project.getGradle()
+                .getSharedServices()
+                .registerIfAbsent(ChangedFilesService.SERVICE_NAME, ChangedFilesService.class, spec -> {
+                    spec.getParameters()
+                            .getRepositoryDir()
+                            .set(project.getIsolated().getRootProject().getProjectDirectory());
+                    spec.getParameters().getReference().set(reference);
+                });
+    }
+
+    /**
+     * Registers the build service recording tool timings.
+     *
+     * The service is registered as a task completion listener by the project that registers the service, so it is
+     * only registered once per build.
+     *
+     * @param project the project
+     * @return the build service provider
+     */
+    private Provider<ToolTimingService> registerToolTimingService(Project project) {
+        var registered = new AtomicBoolean();
+        Provider<ToolTimingService> service = project.getGradle()
+                .getSharedServices()
+                .registerIfAbsent(ToolTimingService.SERVICE_NAME, ToolTimingService.class, spec -> {
+                    registered.set(true);
+                    spec.getParameters()
+                            .getReportFile()
+                            .set(rootBuildDirectory(project).map(d -> d.file("reports/mada-style/tool-timings.json")));
+                });
+        if (registered.get()) {
+            listenerRegistry.onTaskCompletion(service);
+        }
+        return service;
+    }
+
+    /**
+     * Registers the build service collecting ErrorProne check profiles.
+     *
+     * @param project the project
+     * @return the build service provider
+     */
+    private Provider<ErrorProneProfileService> registerErrorProneProfileService(Project project) {
+        var registered = new AtomicBoolean();
+        Provider<ErrorProneProfileService> service = project.getGradle()
+                .getSharedServices()
+                .registerIfAbsent(ErrorProneProfileService.SERVICE_NAME, ErrorProneProfileService.class, spec -> {
+                    registered.set(true);
+                    Provider<RegularFile> reportFile = rootBuildDirectory(project)
+                            .map(d -> d.file("reports/mada-style/errorprone-profile.json"));
+                    spec.getParameters().getReportFile().set(reportFile);
+                });
+        if (registered.get()) {
+            listenerRegistry.onTaskCompletion(service);
+        }
+        return service;
+    }
+
     /**
      * Hook checkstyle configuration on activation of its extension. It only gets configured on task activation.
      *
      * @param project         the project
      * @param configuration   the plugin configuration
-     * @param configExtractor the configuration extractor
+     * @param configExtractor the configuration extractor service
+     * @param changedFiles    the changed files service, or null to check all files
      */
     private void lazyConfigureCheckstyle(
-            Project project, PluginConfiguration configuration, ConfigFileExtractor configExtractor) {
+            Project project,
+            PluginConfiguration configuration,
+            Provider<ConfigFileExtractorService> configExtractor,
+            @Nullable Provider<ChangedFilesService> changedFiles) {
         project.getExtensions().configure(CheckstyleExtension.class, ce -> new CheckstyleConfigurator(
-                        project, configuration.checkstyle(), configExtractor)
+                        project, configuration.checkstyle(), configExtractor, changedFiles)
                 .configure(ce));
     }
 
@@ -97,11 +257,17 @@ public final class MadaStylePlugin implements Plugin<Project> {
      *
      * @param project       the project
      * @param configuration the plugin configuration
+     * @param changedFiles  the changed files service, or null to format all files
      */
-    private void lazyConfigureFormatter(Project project, PluginConfiguration configuration) {
-        project.getExtensions().configure(SpotlessExtension.class, se -> new SpotlessConfigurator(
-                        project.getLogger(), configuration.formatter())
-                .configure(se));
+    private void lazyConfigureFormatter(
+            Project project, PluginConfiguration configuration, @Nullable Provider<ChangedFilesService> changedFiles) {
+        project.getExtensions()
+                .configure(SpotlessExtension.class, se -> new SpotlessConfigurator(
+                                project,
+                                configuration.formatter(),
+                                changedFiles,
+                                GeneratedSourceClassifier.generatedFiles(project.getLayout().getBuildDirectory()))
+                        .configure(se));
     }
 
     /**
@@ -0,0 +1,86 @@
+package dk.mada.style;
+
+import dk.mada.style.config.PluginConfiguration;
+import dk.mada.style.config.StyleConfigurationService;
+import dk.mada.style.configurators.ErrorProneConfigurator;
+import dk.mada.style.configurators.SpotlessConfigurator;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.inject.Inject;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.configuration.BuildFeatures;
+import org.gradle.api.initialization.Settings;
+import org.gradle.api.provider.Provider;
+
+/**
+ * A settings plugin applying the dk.mada java code style to all projects in the build.
+ *
+ * The configuration is parsed once from the build's properties, and shared by all projects.
+ *
+ * Projects can be left out by listing their paths in the dk.mada.style.exclude-projects property.
+ *
+ * The root project is prepared for the features shared by all projects (such as the shared ErrorProne tool
+ * classpath and the predeclared formatter dependencies), even if it is left out.
+ */
+public final class MadaStyleSettingsPlugin implements Plugin<Settings> {
+    /** The property listing the paths of the projects to leave out. */
+    private static final String EXCLUDE_PROJECTS_PROPERTY =
+            PluginConfiguration.DK_MADA_STYLE_PROPPREFIX + "exclude-projects";
+    /** The path of the root project. */
+    private static final String ROOT_PROJECT_PATH = ":";
+    /** The build features. */
+    private final BuildFeatures buildFeatures;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param buildFeatures the build features
+     */
+    @Inject
+    public MadaStyleSettingsPlugin(BuildFeatures buildFeatures) {
+        this.buildFeatures = buildFeatures;
+    }
+
+    @Override
+    public void apply(Settings settings) {
+        boolean isolatedProjects = buildFeatures.getIsolatedProjects().getActive().getOrElse(false);
+        Provider<StyleConfigurationService> configurationService = StyleConfigurationService.register(
+                settings.getGradle(), settings.getProviders(), isolatedProjects, true);
+
+        Set<String> excludedProjects = Stream.of(settings.getProviders()
+                        .gradleProperty(EXCLUDE_PROJECTS_PROPERTY)
+                        .getOrElse("")
+                        .split(","))
+                .map(String::trim)
+                .filter(path -> !path.isEmpty())
+                .collect(Collectors.toSet());
+        settings.getGradle().getLifecycle().beforeProject(project -> {
+            if (ROOT_PROJECT_PATH.equals(project.getPath())) {
+                prepareRootProject(project, configurationService.get());
+            }
+            if (!excludedProjects.contains(project.getPath())) {
+                project.getPluginManager().apply(MadaStylePlugin.class);
+            }
+        });
+    }
+
+    /**
+     * Prepares the root project for the features shared by all projects.
+     *
+     * This is done when the root project itself is configured (which happens before its subprojects), so the root
+     * project is not changed while configuring other projects.
+     *
+     * @param rootProject          the root project
+     * @param configurationService the configuration service
+     */
+    private static void prepareRootProject(Project rootProject, StyleConfigurationService configurationService) {
+        if (configurationService.isSharedToolClasspathAvailable()) {
+            ErrorProneConfigurator.registerSharedToolClasspaths(rootProject);
+        }
+        if (configurationService.isFormatterPredeclared()) {
+            SpotlessConfigurator.predeclareDependencies(rootProject.getLogger(), rootProject);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package dk.mada.style.changes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Build service providing the files changed relative to a git reference.
+ *
+ * The changed files are computed once per build, on first use. They are the files that differ between the working
+ * tree and the merge base of the reference and HEAD, plus untracked files. So both committed and uncommitted changes
+ * are included.
+ *
+ * If git fails (e.g. if the reference is unknown) a warning is logged and all files are treated as changed.
+ */
+public abstract class ChangedFilesService implements BuildService<ChangedFilesService.Params> {
+    /** The name the service is registered with. */
+    public static final String SERVICE_NAME = "dk.mada.style.changed-files";
+    /** The gradle logger. */
+    private static final Logger LOGGER = Logging.getLogger(ChangedFilesService.class);
+    /** The changed files, or null if all files should be treated as changed. */
+    private @Nullable Set<File> changedFiles;
+    /** Flag for the changed files having been computed. */
+    private boolean isComputed;
+
+    /**
+     * Parameters for the service.
+     */
+    public interface Params extends BuildServiceParameters {
+        /** {@return a directory in the git repository} */
+        DirectoryProperty getRepositoryDir();
+
+        /** {@return the git reference to compare with} */
+        Property<String> getReference();
+    }
+
+    /** Constructs new instance. */
+    public ChangedFilesService() {
+        // Explicit default constructor to avoid javadoc warning
+    }
+
+    /**
+     * Determines if a file is changed relative to the reference.
+     *
+     * @param file the file to check
+     * @return true if the file is changed
+     */
+    public boolean isChanged(File file) {
+        Set<File> changed = getChangedFiles();
+        return changed == null || changed.contains(file.getAbsoluteFile());
+    }
+
+    private synchronized @Nullable Set<File> getChangedFiles() {
+        if (!isComputed) {
+            changedFiles = computeChangedFiles();
+            isComputed = true;
+        }
+        return changedFiles;
+    }
+
+    private @Nullable Set<File> computeChangedFiles() {
+        File repositoryDir = getParameters().getRepositoryDir().get().getAsFile();
+        String reference = getParameters().getReference().get();
+        try {
+            // Relative to the repository dir (rather than absolute) to keep the path form used by Gradle
+            List<String> topDirRelative = git(repositoryDir, "rev-parse", "--show-cdup");
+            Path topDir = repositoryDir
+                    .toPath()
+                    .resolve(topDirRelative.isEmpty() ? "" : topDirRelative.getFirst())
+                    .normalize();
+            List<String> mergeBase = git(repositoryDir, "merge-base", reference, "HEAD");
+            if (mergeBase.isEmpty()) {
+                throw new IOException("No merge base found for " + reference + " and HEAD");
+            }
+            List<String> diffFiles = git(repositoryDir, "diff", "--name-only", "--no-renames", mergeBase.getFirst());
+            List<String> untrackedFiles =
+                    git(repositoryDir, "ls-files", "--others", "--exclude-standard", "--full-name");
+
+            Set<File> changed = new HashSet<>();
+            Stream.concat(diffFiles.stream(), untrackedFiles.stream())
+                    .map(name -> topDir.resolve(name).toFile().getAbsoluteFile())
+                    .forEach(changed::add);
+            LOGGER.lifecycle("Mada style checks limited to {} files changed since {}", changed.size(), reference);
+            return changed;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to find files changed since {}, checking all files", reference, e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while finding files changed since {}, checking all files", reference);
+            return null;
+        }
+    }
+
+    private static List<String> git(File workDir, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.addAll(List.of("git", "-c", "core.quotePath=false"));
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command)
+                .directory(workDir)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        String output;
+        try (InputStream is = process.getInputStream()) {
+            output = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("Command " + command + " failed with exit code " + exitCode);
+        }
+        return output.lines().filter(l -> !l.isBlank()).toList();
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Tracking of the source files changed relative to a git reference.
+ */
+package dk.mada.style.changes;
@@ -2,23 +2,37 @@ package dk.mada.style.config;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpClient.Redirect;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
-import java.util.function.Supplier;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.gradle.api.logging.Logger;
+import org.jspecify.annotations.Nullable;
 
 /**
  * Provides configuration resources as files.
@@ -34,18 +48,58 @@ import org.gradle.api.logging.Logger;
  *
  * * local path/url
  *
- * A local file is provided as is. A URL is cached (indexed by the checksum of the URL).
+ * A local file is provided as is. A URL is cached (indexed by the checksum of the URL), and revalidated using
+ * conditional requests when the cached copy is older than the requested time-to-live.
+ *
+ * A URL with a #sha256=checksum fragment is pinned to that content. It is cached (indexed by the checksum of the
+ * content) and never revalidated. The download is verified before it is made available.
+ *
+ * Resolved files are remembered for the lifetime of the instance, so an instance shared via ConfigFileExtractorService
+ * only resolves each path once per build.
+ *
+ * Files stored by checksum never change, so once verified they are remembered (per storage root) for the lifetime of
+ * the plugin classloader. Repeat builds in a warm daemon then only check that the file still exists, not its marker.
  */
 public final class ConfigFileExtractor {
     private final Logger logger;
     /** The download connect timeout. */
     private static final Duration DOWNLOAD_CONNECT_TIMEOUT = Duration.ofSeconds(20);
+    /** The HTTP status for a successful download. */
+    private static final int HTTP_OK = 200;
+    /** The HTTP status for an unchanged remote file. */
+    private static final int HTTP_NOT_MODIFIED = 304;
+    /** The buffer size used when copying downloaded content. */
+    private static final int COPY_BUFFER_SIZE = 8192;
+    /** The maximal size of a downloaded file. */
+    private static final long MAX_DOWNLOAD_SIZE = 16L * 1024 * 1024;
+    /** The URL fragment prefix used for pinning the content checksum. */
+    private static final String SHA256_FRAGMENT_PREFIX = "#sha256=";
+    /** The metadata key for the remote file's entity tag. */
+    private static final String META_ETAG = "etag";
+    /** The metadata key for the remote file's last modification time. */
+    private static final String META_LAST_MODIFIED = "last-modified";
+    /** The metadata key for the time (epoch millis) the cached copy was last validated. */
+    private static final String META_VALIDATED = "validated";
+    /** The time to wait for a file lock. */
+    private static final Duration LOCK_TIMEOUT = Duration.ofMinutes(5);
+    /** The interval between attempts to take a file lock. */
+    private static final Duration LOCK_RETRY_INTERVAL = Duration.ofMillis(20);
+    /** The in-JVM locks guarding the file locks, indexed by lock file. */
+    private static final Map<Path, Object> JVM_LOCKS = new ConcurrentHashMap<>();
+    /** The files stored by checksum that are known to be valid, indexed by storage root. */
+    private static final Map<Path, Set<Path>> VERIFIED_FILES = new ConcurrentHashMap<>();
     /** The checksum properties resource path. */
     private static final String CHECKSUMS_PROPERTIES = "/config/datafile-checksums.properties";
     /** The gradle home dir. */
     private final Path gradleHomeDir;
     /** The parsed checksum properties. */
-    private final Properties dataChecksums;
+    private final Map<String, String> dataChecksums;
+    /** The files resolved from resource paths. */
+    private final Map<String, Path> resourceFiles = new ConcurrentHashMap<>();
+    /** The files resolved from configuration paths. */
+    private final Map<String, Path> configPathFiles = new ConcurrentHashMap<>();
+    /** The content checksums of the files resolved from configuration paths. */
+    private final Map<String, String> configPathChecksums = new ConcurrentHashMap<>();
 
     /**
      * Constructs a new instance.
@@ -57,7 +111,7 @@ public final class ConfigFileExtractor {
         this.logger = logger;
         this.gradleHomeDir = gradleHomeDir;
 
-        this.dataChecksums = ResourceConfigProperties.readConfigProperties(CHECKSUMS_PROPERTIES);
+        this.dataChecksums = ResourceConfigProperties.getConfigProperties(CHECKSUMS_PROPERTIES);
     }
 
     /**
@@ -66,27 +120,74 @@ public final class ConfigFileExtractor {
      * @param path the resource path
      */
     public Path getLocalConfigFileFromResource(String path) {
-        String checksum = dataChecksums.getProperty(path);
+        return resourceFiles.computeIfAbsent(path, this::extractResource);
+    }
+
+    /**
+     * {@return the checksum of the given configuration resource path}
+     *
+     * @param path the resource path
+     */
+    public String getResourceChecksum(String path) {
+        String checksum = dataChecksums.get(path);
         if (checksum == null) {
             throw new IllegalStateException("Failed to read " + path + " from data checksums: " + dataChecksums);
         }
+        return checksum;
+    }
+
+    private Path extractResource(String path) {
+        String checksum = getResourceChecksum(path);
         String resourcePath = "/config/" + path;
-        return lazyGetLocalFile(resourcePath, checksum, () -> readClassloaderResource(resourcePath));
+        return lazyGetLocalFile(resourcePath, checksum, target -> copyClassloaderResource(resourcePath, target));
     }
 
     /**
      * Provides a local file from a configuration path.
      *
-     * If the path starts with http:// or https:// it is treated as a remote file that gets downloaded and stored locally,
-     * indexed by the url. So changing the content of the remote file will not have an effect on the cached data.
+     * If the path starts with http:// or https:// it is treated as a remote file that gets downloaded and stored
+     * locally, indexed by the url. The cached copy is used as is until it is older than the time-to-live. After that it
+     * is revalidated with a conditional request, which only transfers the content if it has changed. If the server
+     * cannot be reached, the cached copy is used.
+     *
+     * If the URL ends with a #sha256=checksum fragment, the remote file is stored indexed by the checksum of its
+     * content. When it is present, the network is not used at all.
      *
      * @param path the local path to a file, or an URL to a remote file
+     * @param ttl  the time-to-live for a cached copy of a remote file
      * @return a local file reference
      */
-    public Path getLocalFileFromConfigPath(String path) {
+    public Path getLocalFileFromConfigPath(String path, Duration ttl) {
+        return configPathFiles.computeIfAbsent(path, p -> resolveConfigPath(p, ttl));
+    }
+
+    /**
+     * Provides the checksum of the content of a configuration path.
+     *
+     * @param path the local path to a file, or an URL to a remote file
+     * @param ttl  the time-to-live for a cached copy of a remote file
+     * @return the SHA-256 checksum of the file content
+     */
+    public String getConfigPathChecksum(String path, Duration ttl) {
+        return configPathChecksums.computeIfAbsent(path, p -> {
+            Path file = getLocalFileFromConfigPath(p, ttl);
+            try {
+                return HexFormat.of().formatHex(newSha256Digest().digest(Files.readAllBytes(file)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read " + file, e);
+            }
+        });
+    }
+
+    private Path resolveConfigPath(String path, Duration ttl) {
         if (path.startsWith("http://") || path.startsWith("https://")) {
-            String safePath = path.replaceAll("[^a-zA-Z0-9.-]", "_");
-            return lazyGetLocalFile(safePath, checksum(path), () -> fetchUrlContent(path));
+            int pinIndex = path.indexOf(SHA256_FRAGMENT_PREFIX);
+            if (pinIndex >= 0) {
+                String sha256 = path.substring(pinIndex + SHA256_FRAGMENT_PREFIX.length())
+                        .toLowerCase(Locale.ROOT);
+                return getPinnedRemoteFile(path.substring(0, pinIndex), sha256);
+            }
+            return getRemoteFile(path, ttl);
         } else {
             Path f = Paths.get(path);
             if (Files.isRegularFile(f)) {
@@ -96,11 +197,40 @@ public final class ConfigFileExtractor {
         }
     }
 
-    private Path lazyGetLocalFile(String path, String checksum, Supplier<String> supplier) {
+    /**
+     * Writes content to a file.
+     */
+    @FunctionalInterface
+    private interface ContentWriter {
+        /**
+         * Writes the content to the target file.
+         *
+         * @param target the file to write to
+         * @throws IOException if the content cannot be written
+         */
+        void writeTo(Path target) throws IOException;
+    }
+
+    /**
+     * Provides a local file, extracting it if it is not already available.
+     *
+     * The content is streamed to a temporary file in the target directory, and then published by an atomic move
+     * followed by creation of the marker file. This happens while holding a file lock, so concurrent writers (threads
+     * or processes sharing the Gradle home) do not interfere with each other. Readers only use the target file when
+     * the marker file exists, so they never see partially written content.
+     *
+     * @param path     the path of the file, the directory part is used for grouping files
+     * @param checksum the checksum of the file content
+     * @param writer   the writer providing the file content
+     * @return the local file
+     */
+    private Path lazyGetLocalFile(String path, String checksum, ContentWriter writer) {
         Path madaConfigDir = gradleHomeDir.resolve("mada-data");
+        Set<Path> verifiedFiles = VERIFIED_FILES.computeIfAbsent(
+                madaConfigDir.toAbsolutePath().normalize(), _ -> ConcurrentHashMap.newKeySet());
         try {
             int nameIndex = path.lastIndexOf('/');
-            String dirname = path.substring(0, nameIndex);
+            String dirname = nameIndex < 0 ? "" : path.substring(0, nameIndex);
             if (dirname.startsWith("/")) {
                 dirname = dirname.substring(1);
             }
@@ -109,59 +239,349 @@ public final class ConfigFileExtractor {
             Path configDir = madaConfigDir.resolve(dirname).resolve(checksum);
 
             Path targetFile = configDir.resolve(filename);
+            if (verifiedFiles.contains(targetFile)) {
+                if (Files.exists(targetFile)) {
+                    return targetFile;
+                }
+                // The storage has been cleaned since the file was verified
+                verifiedFiles.remove(targetFile);
+            }
             Path markerFile = configDir.resolve(filename + ".valid");
-            if (Files.exists(markerFile)) {
+            if (Files.exists(markerFile) && Files.exists(targetFile)) {
                 logger.debug("Already have config file {} : {}", path, targetFile);
+                verifiedFiles.add(targetFile);
                 return targetFile;
             }
-            logger.debug("Missing config file {}, fetching...", path);
 
             Files.createDirectories(configDir);
-            Files.deleteIfExists(targetFile);
+            return withFileLock(configDir.resolve(filename + ".lock"), () -> {
+                if (Files.exists(markerFile) && Files.exists(targetFile)) {
+                    logger.debug("Config file {} provided by other writer: {}", path, targetFile);
+                    verifiedFiles.add(targetFile);
+                    return targetFile;
+                }
+                // A marker without its file is left from a partial cleanup
+                Files.deleteIfExists(markerFile);
+                logger.debug("Missing config file {}, fetching...", path);
 
-            Files.writeString(targetFile, supplier.get());
-            Files.createFile(markerFile);
-
-            return targetFile;
+                Path tempFile = Files.createTempFile(configDir, filename, ".tmp");
+                try {
+                    writer.writeTo(tempFile);
+                    Files.move(tempFile, targetFile, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tempFile);
+                }
+                Files.createFile(markerFile);
+                verifiedFiles.add(targetFile);
+                return targetFile;
+            });
         } catch (IOException e) {
             throw new IllegalStateException("Failed to save " + path + " in " + madaConfigDir, e);
         }
     }
 
-    private String readClassloaderResource(String resourcePath) {
+    private void copyClassloaderResource(String resourcePath, Path target) throws IOException {
         try (InputStream is = getClass().getResourceAsStream(resourcePath)) {
             if (is == null) {
                 throw new IllegalStateException("Failed to read config file " + resourcePath);
             }
-            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Provides a local copy of a remote file.
+     *
+     * The remote file is stored with a metadata file containing the ETag and Last-Modified headers from the server,
+     * and the time of the latest validation. The metadata file is written after the content, so its presence marks the
+     * content as valid.
+     *
+     * @param url the URL of the remote file
+     * @param ttl the time-to-live for the cached copy
+     * @return the local copy of the remote file
+     */
+    private Path getRemoteFile(String url, Duration ttl) {
+        Path remoteDir = gradleHomeDir.resolve("mada-data").resolve("remote").resolve(checksum(url));
+        String filename = url.replaceAll("[^a-zA-Z0-9.-]", "_");
+        Path targetFile = remoteDir.resolve(filename);
+        Path metadataFile = remoteDir.resolve(filename + ".meta");
+        try {
+            if (isFresh(targetFile, readMetadata(metadataFile), ttl)) {
+                logger.debug("Already have remote file {} : {}", url, targetFile);
+                return targetFile;
+            }
+
+            Files.createDirectories(remoteDir);
+            return withFileLock(remoteDir.resolve(filename + ".lock"), () -> {
+                Properties metadata = readMetadata(metadataFile);
+                if (isFresh(targetFile, metadata, ttl)) {
+                    logger.debug("Remote file {} validated by other writer: {}", url, targetFile);
+                    return targetFile;
+                }
+                return revalidateRemoteFile(url, targetFile, metadataFile, metadata);
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to save " + url + " in " + remoteDir, e);
+        }
+    }
+
+    private Path revalidateRemoteFile(String url, Path targetFile, Path metadataFile, Properties metadata)
+            throws IOException {
+        boolean haveCachedCopy = !metadata.isEmpty() && Files.isRegularFile(targetFile);
+
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder().GET().uri(URI.create(url));
+        if (haveCachedCopy) {
+            String etag = metadata.getProperty(META_ETAG);
+            if (etag != null) {
+                requestBuilder.header("If-None-Match", etag);
+            }
+            String lastModified = metadata.getProperty(META_LAST_MODIFIED);
+            if (lastModified != null) {
+                requestBuilder.header("If-Modified-Since", lastModified);
+            }
+        }
+
+        Path remoteDir = Objects.requireNonNull(targetFile.getParent());
+        Path tempFile = Files.createTempFile(remoteDir, targetFile.getFileName().toString(), ".tmp");
+        try {
+            HttpResponse<InputStream> response = send(url, requestBuilder.build());
+
+            int status = response.statusCode();
+            if (status == HTTP_NOT_MODIFIED && haveCachedCopy) {
+                logger.debug("Remote file {} not modified", url);
+                metadata.setProperty(META_VALIDATED, Long.toString(System.currentTimeMillis()));
+                writeMetadata(metadataFile, metadata);
+                return targetFile;
+            }
+            if (status != HTTP_OK) {
+                return fallbackToCachedCopy(url, targetFile, haveCachedCopy, "got status " + status, null);
+            }
+
+            copyLimited(url, response.body(), tempFile, null);
+            Files.move(tempFile, targetFile, StandardCopyOption.ATOMIC_MOVE);
+
+            Properties newMetadata = new Properties();
+            response.headers().firstValue("ETag").ifPresent(v -> newMetadata.setProperty(META_ETAG, v));
+            response.headers()
+                    .firstValue("Last-Modified")
+                    .ifPresent(v -> newMetadata.setProperty(META_LAST_MODIFIED, v));
+            newMetadata.setProperty(META_VALIDATED, Long.toString(System.currentTimeMillis()));
+            writeMetadata(metadataFile, newMetadata);
+            return targetFile;
         } catch (IOException e) {
-            throw new IllegalStateException("Failed to read resource " + resourcePath, e);
+            return fallbackToCachedCopy(url, targetFile, haveCachedCopy, e.getMessage(), e);
+        } finally {
+            Files.deleteIfExists(tempFile);
         }
     }
 
-    private String fetchUrlContent(String url) {
+    /**
+     * Provides a local copy of a remote file pinned to a specific content checksum.
+     *
+     * @param url    the URL of the remote file
+     * @param sha256 the expected SHA-256 checksum of the content
+     * @return the local copy of the remote file
+     */
+    private Path getPinnedRemoteFile(String url, String sha256) {
+        if (!sha256.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Invalid sha256 checksum '" + sha256 + "' for " + url);
+        }
+        String safePath = "remote/sha256/" + url.replaceAll("[^a-zA-Z0-9.-]", "_");
+        return lazyGetLocalFile(safePath, sha256, target -> downloadPinnedContent(url, sha256, target));
+    }
+
+    private void downloadPinnedContent(String url, String expectedSha256, Path target) throws IOException {
+        HttpResponse<InputStream> response =
+                send(url, HttpRequest.newBuilder().GET().uri(URI.create(url)).build());
+        if (response.statusCode() != HTTP_OK) {
+            response.body().close();
+            throw new IOException("Got status " + response.statusCode() + " for " + url);
+        }
+
+        MessageDigest digest = newSha256Digest();
+        copyLimited(url, response.body(), target, digest);
+        String actualSha256 = HexFormat.of().formatHex(digest.digest());
+        if (!actualSha256.equals(expectedSha256)) {
+            throw new IOException(
+                    "Content of " + url + " has checksum " + actualSha256 + ", expected " + expectedSha256);
+        }
+    }
+
+    /**
+     * Sends a request, providing the body as a stream if the request is successful.
+     *
+     * @param url     the URL for log messages
+     * @param request the request
+     * @return the response
+     * @throws IOException if the request fails
+     */
+    private HttpResponse<InputStream> send(String url, HttpRequest request) throws IOException {
         try {
             logger.debug("Download data from {}", url);
             HttpClient client = HttpClient.newBuilder()
                     .followRedirects(Redirect.NORMAL)
                     .connectTimeout(DOWNLOAD_CONNECT_TIMEOUT)
                     .build();
-            HttpRequest request =
-                    HttpRequest.newBuilder().GET().uri(URI.create(url)).build();
-            HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
-            return response.body();
+            // Only the body of a successful response is of interest
+            return client.send(
+                    request,
+                    info -> info.statusCode() == HTTP_OK
+                            ? BodySubscribers.ofInputStream()
+                            : BodySubscribers.replacing(InputStream.nullInputStream()));
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new IllegalStateException("Interruped while fetching remote file " + url, e);
-        } catch (IOException e) {
-            throw new IllegalStateException("Failed to fetch remote file " + url, e);
         }
     }
 
-    private String checksum(String s) {
+    /**
+     * Streams content to a file, limiting its size.
+     *
+     * @param url    the URL for error messages
+     * @param is     the content stream, closed by this method
+     * @param target the file to write to
+     * @param digest an optional digest to update with the content
+     * @throws IOException if the content cannot be copied, or exceeds the maximal size
+     */
+    private static void copyLimited(String url, InputStream is, Path target, @Nullable MessageDigest digest)
+            throws IOException {
+        try (InputStream in = is;
+                OutputStream os = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > MAX_DOWNLOAD_SIZE) {
+                    throw new IOException("Content of " + url + " exceeds " + MAX_DOWNLOAD_SIZE + " bytes");
+                }
+                if (digest != null) {
+                    digest.update(buffer, 0, read);
+                }
+                os.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private Path fallbackToCachedCopy(
+            String url, Path targetFile, boolean haveCachedCopy, @Nullable String reason, @Nullable Exception cause) {
+        if (!haveCachedCopy) {
+            throw new IllegalStateException("Failed to fetch remote file " + url + ": " + reason, cause);
+        }
+        logger.warn("Failed to revalidate remote file {} ({}), using cached copy {}", url, reason, targetFile);
+        return targetFile;
+    }
+
+    private boolean isFresh(Path targetFile, Properties metadata, Duration ttl) {
+        String validated = metadata.getProperty(META_VALIDATED);
+        if (validated == null || !Files.isRegularFile(targetFile)) {
+            return false;
+        }
+        try {
+            Instant expires = Instant.ofEpochMilli(Long.parseLong(validated)).plus(ttl);
+            return expires.isAfter(Instant.now());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static Properties readMetadata(Path metadataFile) throws IOException {
+        Properties metadata = new Properties();
+        if (Files.isRegularFile(metadataFile)) {
+            try (Reader reader = Files.newBufferedReader(metadataFile, StandardCharsets.UTF_8)) {
+                metadata.load(reader);
+            }
+        }
+        return metadata;
+    }
+
+    private static void writeMetadata(Path metadataFile, Properties metadata) throws IOException {
+        Path metadataDir = Objects.requireNonNull(metadataFile.getParent());
+        Path tempFile = Files.createTempFile(metadataDir, metadataFile.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                metadata.store(writer, "mada-style remote file metadata");
+            }
+            Files.move(tempFile, metadataFile, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * An action run while holding a file lock.
+     */
+    @FunctionalInterface
+    private interface LockedAction {
+        /**
+         * Runs the action.
+         *
+         * @return the file provided by the action
+         * @throws IOException if the action fails
+         */
+        Path run() throws IOException;
+    }
+
+    /**
+     * Runs an action while holding a lock on a file.
+     *
+     * File locks are held by the JVM, so threads in this JVM are kept apart by a separate monitor. The monitor is only
+     * shared by threads using the same plugin classloader. When another classloader (in the same JVM) holds the file
+     * lock, taking it fails with OverlappingFileLockException, which is handled as contention like a lock held by
+     * another process.
+     *
+     * @param lockFile the lock file
+     * @param action   the action to run
+     * @return the file provided by the action
+     * @throws IOException if the lock cannot be taken, or the action fails
+     */
+    private static Path withFileLock(Path lockFile, LockedAction action) throws IOException {
+        synchronized (JVM_LOCKS.computeIfAbsent(lockFile, _ -> new Object())) {
+            try (FileChannel lockChannel =
+                            FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    FileLock _ = acquireLock(lockFile, lockChannel)) {
+                return action.run();
+            }
+        }
+    }
+
+    private static FileLock acquireLock(Path lockFile, FileChannel lockChannel) throws IOException {
+        long deadline = System.nanoTime() + LOCK_TIMEOUT.toNanos();
+        while (true) {
+            try {
+                FileLock lock = lockChannel.tryLock();
+                if (lock != null) {
+                    return lock;
+                }
+            } catch (OverlappingFileLockException _) {
+                // Held via another classloader in this JVM
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IOException("Timed out waiting for lock " + lockFile);
+            }
+            try {
+                Thread.sleep(LOCK_RETRY_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for lock " + lockFile, e);
+            }
+        }
+    }
+
+    /**
+     * Computes the SHA-256 checksum of a string.
+     *
+     * @param s the string
+     * @return the checksum as a hex string
+     */
+    static String checksum(String s) {
+        byte[] d = newSha256Digest().digest(s.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(d);
+    }
+
+    private static MessageDigest newSha256Digest() {
         try {
-            byte[] d = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
-            return HexFormat.of().formatHex(d);
+            return MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException e) {
             throw new IllegalStateException("Failed to make checksum", e);
         }
@@ -0,0 +1,38 @@
+package dk.mada.style.config;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Build service sharing a single configuration file extractor between all projects in the build.
+ *
+ * This makes resources and URLs resolve only once per build, regardless of the number of projects applying the plugin.
+ */
+public abstract class ConfigFileExtractorService implements BuildService<ConfigFileExtractorService.Params> {
+    /** The name the service is registered with. */
+    public static final String SERVICE_NAME = "dk.mada.style.config-file-extractor";
+    /** The shared extractor. */
+    private final ConfigFileExtractor extractor;
+
+    /**
+     * Parameters for the service.
+     */
+    public interface Params extends BuildServiceParameters {
+        /** {@return the directory used for persistent storage of extracted files} */
+        DirectoryProperty getStorageDir();
+    }
+
+    /** Constructs new instance. */
+    public ConfigFileExtractorService() {
+        extractor = new ConfigFileExtractor(
+                Logging.getLogger(ConfigFileExtractor.class),
+                getParameters().getStorageDir().get().getAsFile().toPath());
+    }
+
+    /** {@return the configuration file extractor shared by all projects} */
+    public ConfigFileExtractor extractor() {
+        return extractor;
+    }
+}
@@ -1,9 +1,15 @@
 package dk.mada.style.config;
 
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.ProviderFactory;
 import org.jspecify.annotations.Nullable;
 
 /**
@@ -11,12 +17,20 @@ import org.jspecify.annotations.Nullable;
  *
  * Expressed entirely via Gradle project properties (from gradle.properties). This allows the plugin to be removed
  * without causing build breakage.
+ *
+ * The properties are parsed and validated into immutable records, with lists pre-split.
  */
 public class PluginConfiguration {
     /** The prefix used for all configuration properties. */
-    private static final String DK_MADA_STYLE_PROPPREFIX = "dk.mada.style.";
-    /** The Gradle project. */
-    private final Project project;
+    public static final String DK_MADA_STYLE_PROPPREFIX = "dk.mada.style.";
+    /** The configuration properties, indexed by name without prefix. */
+    private final Map<String, String> properties;
+    /** The gradle logger. */
+    private final Logger logger;
+    /** The active style profile. */
+    private final StyleProfile styleProfile;
+    /** The git reference to limit checks to changed files from, or null to check all files. */
+    private final @Nullable String changedSince;
     /** The parsed CheckStyle configuration. */
     private final CheckstyleConfiguration checkstyleConf;
     /** The parsed ErrorProne configuration. */
@@ -27,6 +41,8 @@ public class PluginConfiguration {
     private final NullcheckerConfiguration nullcheckerConf;
     /** The parsed sonar configuration. */
     private final SonarConfiguration sonarConf;
+    /** The parsed report configuration. */
+    private final ReportConfiguration reportConf;
 
     /**
      * Checkstyle configuration.
@@ -39,6 +55,10 @@ public class PluginConfiguration {
      * @param ignoreGeneratedSource flag to ignore generated source files
      * @param toolVersion           an optional checkstyle version to use
      * @param configPath            an optional path to a checkstyle configuration file
+     * @param configPathTtl         the time a downloaded checkstyle configuration file is used before revalidation
+     * @param parallelism           the number of shards to split each checkstyle task into, 1 to disable sharding
+     * @param deferred              flag to only run checkstyle when its tasks are requested explicitly
+     * @param excludeGenerated      flag to exclude classified generated source files
      */
     public record CheckstyleConfiguration(
             boolean enabled,
@@ -48,7 +68,11 @@ public class PluginConfiguration {
             boolean ignoreTestSource,
             boolean ignoreGeneratedSource,
             @Nullable String toolVersion,
-            @Nullable String configPath) {}
+            @Nullable String configPath,
+            Duration configPathTtl,
+            int parallelism,
+            boolean deferred,
+            boolean excludeGenerated) {}
 
     /**
      * ErrorProne configuration.
@@ -57,50 +81,115 @@ public class PluginConfiguration {
      * @param ignoreTestSource      flag to ignore test source files
      * @param ignoreGeneratedSource flag to ignore generated source files
      * @param excludePathsRegexp    a regular expression of source paths to ignore
-     * @param disabledRules         a comma-separated list of rule names to disable
+     * @param disabledRules         a list of rule names to disable
+     * @param profile               flag to activate profiling of the individual checks
+     * @param mode                  the mode ErrorProne is run in
+     * @param onlyChecks            the only checks to enable, or empty to enable the default checks
+     * @param sharedClasspath       flag to resolve the tool classpath once for all projects
+     * @param heapAwareFork         flag to size the compiler memory from measured heap usage
+     * @param forkThresholdMib      the heap size above which compilations are forked (in MiB)
+     * @param excludeGenerated      flag to exclude classified generated source files
      */
     public record ErrorProneConfiguration(
             boolean enabled,
             boolean ignoreTestSource,
             boolean ignoreGeneratedSource,
             String excludePathsRegexp,
-            String disabledRules) {}
+            List<String> disabledRules,
+            boolean profile,
+            ErrorProneMode mode,
+            List<String> onlyChecks,
+            boolean sharedClasspath,
+            boolean heapAwareFork,
+            long forkThresholdMib,
+            boolean excludeGenerated) {}
+
+    /**
+     * The style profiles.
+     */
+    public enum StyleProfile {
+        /** Reduced analysis for fast local edit-compile loops. */
+        FAST,
+        /** The complete analysis. */
+        FULL
+    }
+
+    /**
+     * The modes ErrorProne can be run in.
+     */
+    public enum ErrorProneMode {
+        /** ErrorProne runs as part of the compile tasks. */
+        INLINE,
+        /** ErrorProne runs in separate analysis tasks, leaving the compile tasks to plain javac. */
+        SEPARATE
+    }
 
     /**
      * Formatter configuration.
      *
-     * @param enabled  flag to activate formatter
-     * @param includes Ant-style patterns for sources to format
-     * @param excludes Ant-style patterns for sources to ignore
+     * @param enabled          flag to activate formatter
+     * @param includes         Ant-style patterns for sources to format
+     * @param excludes         Ant-style patterns for sources to ignore
+     * @param predeclareDeps   flag to resolve the formatter dependencies once in the root project
+     * @param excludeGenerated flag to exclude classified generated source files
      */
-    public record FormatterConfiguration(boolean enabled, List<String> includes, List<String> excludes) {}
+    public record FormatterConfiguration(
+            boolean enabled,
+            List<String> includes,
+            List<String> excludes,
+            boolean predeclareDeps,
+            boolean excludeGenerated) {}
 
     /**
      * Null-checker configuration.
      *
      * @param enabled                  flag to activate null-checker
-     * @param includePackages          a comma-separated list of packages to scan (restricted regexp syntax)
-     * @param excludePackages          a comma-separated list of packages to ignore (restricted regexp syntax)
-     * @param excludedFieldAnnotations a comma-seaparated list of classes to ignore (restricted regexp syntax)
+     * @param includePackages          a list of packages to scan (restricted regexp syntax)
+     * @param excludePackages          a list of packages to ignore (restricted regexp syntax)
+     * @param excludedFieldAnnotations a list of classes to ignore (restricted regexp syntax)
      */
     public record NullcheckerConfiguration(
-            boolean enabled, String includePackages, String excludePackages, String excludedFieldAnnotations) {}
+            boolean enabled,
+            List<String> includePackages,
+            List<String> excludePackages,
+            List<String> excludedFieldAnnotations) {}
 
     /**
      * SonarSource sonar configuration.
      *
      * @param enabled                  flag to activate sonar
      * @param madaConventionProperties convention properties for sonar
+     * @param skipUnchanged            flag to skip the analysis if its inputs are unchanged
+     */
+    public record SonarConfiguration(
+            boolean enabled, Map<String, String> madaConventionProperties, boolean skipUnchanged) {}
+
+    /**
+     * Report configuration.
+     *
+     * @param timings flag to activate the tool timing report
      */
-    public record SonarConfiguration(boolean enabled, Map<String, String> madaConventionProperties) {}
+    public record ReportConfiguration(boolean timings) {}
 
     /**
      * Creates a new instance.
      *
-     * @param project the Gradle project
+     * With isolated projects, features that configure the root project from other projects are disabled.
+     *
+     * @param properties       the configuration properties, indexed by name without prefix
+     * @param isCi             flag for the build running on a CI server
+     * @param isolatedProjects flag for isolated projects being active
+     * @param logger           the gradle logger
      */
-    public PluginConfiguration(Project project) {
-        this.project = project;
+    public PluginConfiguration(Map<String, String> properties, boolean isCi, boolean isolatedProjects, Logger logger) {
+        this.properties = Map.copyOf(properties);
+        this.logger = logger;
+
+        styleProfile = resolveStyleProfile(isCi);
+        boolean isFastProfile = styleProfile == StyleProfile.FAST;
+        String changedSinceRef = getProperty("changed-since", "").trim();
+        changedSince = changedSinceRef.isEmpty() ? null : changedSinceRef;
+        boolean excludeGenerated = getBoolProperty("exclude-generated-source", false);
 
         checkstyleConf = new CheckstyleConfiguration(
                 getBoolProperty("checkstyle.enabled", true),
@@ -110,20 +199,45 @@ public class PluginConfiguration {
                 getBoolProperty("checkstyle.ignore-test-source", false),
                 getBoolProperty("checkstyle.ignore-generated-source", false),
                 getNullableProperty("checkstyle.tool-version", null),
-                getNullableProperty("checkstyle.config-path", null));
+                getNullableProperty("checkstyle.config-path", null),
+                Duration.ofMinutes(getLongProperty("checkstyle.config-path-ttl-minutes", 24 * 60L)),
+                Math.toIntExact(Math.max(1, getLongProperty("checkstyle.parallelism", 1))),
+                isFastProfile,
+                excludeGenerated);
 
         errorproneConf = new ErrorProneConfiguration(
                 getBoolProperty("errorprone.enabled", true),
                 getBoolProperty("errorprone.ignore-test-source", false),
                 getBoolProperty("errorprone.ignore-generated-source", false),
                 getProperty("errorprone.excluded-paths-regexp", ""),
-                getProperty(
+                getListProperty(
                         "errorprone.disabled-rules",
-                        ""
+                        List.of(
                                 // https://github.com/google/error-prone/issues/1542 (Set.of - possible records problem)
-                                + "ImmutableEnumChecker,"
+                                "ImmutableEnumChecker",
                                 // The time zone is not relevant
-                                + "JavaTimeDefaultTimeZone"));
+                                "JavaTimeDefaultTimeZone")),
+                getBoolProperty("errorprone.profile", false),
+                getEnumProperty("errorprone.mode", ErrorProneMode.INLINE),
+                isFastProfile
+                        ? getListProperty(
+                                "errorprone.fast-checks",
+                                List.of(
+                                        "DeadException",
+                                        "EqualsHashCode",
+                                        "FallThrough",
+                                        "MissingCasesInEnumSwitch",
+                                        "MissingOverride",
+                                        "ReferenceEquality",
+                                        "SelfAssignment",
+                                        "SelfEquals",
+                                        "StringSplitter",
+                                        "UnusedVariable"))
+                        : List.of(),
+                getBoolProperty("errorprone.shared-classpath", false),
+                getBoolProperty("errorprone.heap-aware-fork", false),
+                getLongProperty("errorprone.fork-threshold-mb", 1024),
+                excludeGenerated);
 
         @Nullable String oldEclipseP2UrlConfig = getNullableProperty("formatter.eclipse-432-p2-url", null);
         if (oldEclipseP2UrlConfig != null) {
@@ -133,21 +247,26 @@ public class PluginConfiguration {
         formatterConf = new FormatterConfiguration(
                 getBoolProperty("formatter.enabled", true),
                 getListProperty("formatter.include", List.of("src/main/java/**/*.java", "src/test/java/**/*.java")),
-                getListProperty("formatter.exclude", List.of()));
+                getListProperty("formatter.exclude", List.of()),
+                getRootConfiguringFeature("formatter.predeclare-deps", isolatedProjects),
+                excludeGenerated);
 
         nullcheckerConf = new NullcheckerConfiguration(
                 getBoolProperty("null-checker.enabled", true),
-                getProperty("null-checker.include-packages", "dk"),
-                getProperty("null-checker.exclude-packages", ""),
-                getProperty(
+                getListProperty("null-checker.include-packages", List.of("dk")),
+                getListProperty("null-checker.exclude-packages", List.of()),
+                getListProperty(
                         "null-checker.exclude-field-annotations",
-                        "javafx.fxml.FXML, org.junit.jupiter.api.io.TempDir"));
+                        List.of("javafx.fxml.FXML", "org.junit.jupiter.api.io.TempDir")));
 
         sonarConf = new SonarConfiguration(
                 getBoolProperty("sonar.enabled", true),
                 Map.of(
                         "sonar.host.url", "https://sonarcloud.io",
-                        "sonar.sourceEncoding", "UTF-8"));
+                        "sonar.sourceEncoding", "UTF-8"),
+                getBoolProperty("sonar.skip-unchanged", false));
+
+        reportConf = new ReportConfiguration(getBoolProperty("report.timings", false));
     }
 
     /** {@return the CheckStyle configuration} */
@@ -160,6 +279,79 @@ public class PluginConfiguration {
         return checkstyle().enabled();
     }
 
+    /**
+     * Reads the configuration properties from the build's Gradle properties.
+     *
+     * @param providers the provider factory
+     * @return the configuration properties, indexed by name without prefix
+     */
+    public static Map<String, String> readBuildProperties(ProviderFactory providers) {
+        return withoutPrefix(providers.gradlePropertiesPrefixedBy(DK_MADA_STYLE_PROPPREFIX).get());
+    }
+
+    /**
+     * Reads the configuration properties seen by a project.
+     *
+     * These are from the project's gradle.properties file and its extra properties. Note that the extra properties
+     * also include the build's Gradle properties. Unlike Project.findProperty, this does not look at the parent
+     * projects, so it is safe with isolated projects.
+     *
+     * @param project the Gradle project
+     * @return the configuration properties, indexed by name without prefix
+     */
+    public static Map<String, String> readProjectProperties(Project project) {
+        return withoutPrefix(project.getExtensions().getExtraProperties().getProperties());
+    }
+
+    private static Map<String, String> withoutPrefix(Map<String, ?> props) {
+        Map<String, String> result = new HashMap<>();
+        props.forEach((key, value) -> {
+            if (key.startsWith(DK_MADA_STYLE_PROPPREFIX) && value != null) {
+                result.put(key.substring(DK_MADA_STYLE_PROPPREFIX.length()), value.toString());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Determines if the build runs on a CI server.
+     *
+     * @param providers the provider factory
+     * @return true if the build runs on a CI server
+     */
+    public static boolean isCi(ProviderFactory providers) {
+        return Stream.of("CI", "JENKINS_URL")
+                .map(name -> providers.environmentVariable(name).getOrElse(""))
+                .anyMatch(value -> !value.isBlank() && !"false".equalsIgnoreCase(value));
+    }
+
+    /**
+     * Resolves the active style profile.
+     *
+     * The full profile is used unless another profile is selected explicitly. With the auto profile the full profile
+     * is used on CI servers and the fast profile otherwise.
+     *
+     * @param isCi flag for the build running on a CI server
+     * @return the active style profile
+     */
+    private StyleProfile resolveStyleProfile(boolean isCi) {
+        String profile = getNullableProperty("profile", null);
+        if (profile != null && "auto".equalsIgnoreCase(profile.trim())) {
+            return isCi ? StyleProfile.FULL : StyleProfile.FAST;
+        }
+        return getEnumProperty("profile", StyleProfile.FULL);
+    }
+
+    /** {@return the active style profile} */
+    public StyleProfile profile() {
+        return styleProfile;
+    }
+
+    /** {@return the git reference to limit checks to changed files from, or null to check all files} */
+    public @Nullable String changedSince() {
+        return changedSince;
+    }
+
     /** {@return the ErrorProne configuration} */
     public ErrorProneConfiguration errorProne() {
         return errorproneConf;
@@ -200,6 +392,11 @@ public class PluginConfiguration {
         return sonar().enabled();
     }
 
+    /** {@return the report configuration} */
+    public ReportConfiguration report() {
+        return reportConf;
+    }
+
     private boolean getBoolProperty(String name, boolean defaultValue) {
         String value = getNullableProperty(name, null);
         if (value == null) {
@@ -208,6 +405,38 @@ public class PluginConfiguration {
         return Boolean.valueOf(value);
     }
 
+    private long getLongProperty(String name, long defaultValue) {
+        String value = getNullableProperty(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "Property " + DK_MADA_STYLE_PROPPREFIX + name + " must be a number, was '" + value + "'", e);
+        }
+    }
+
+    private <T extends Enum<T>> T getEnumProperty(String name, T defaultValue) {
+        String value = getNullableProperty(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        Class<T> type = defaultValue.getDeclaringClass();
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            String validValues = Stream.of(type.getEnumConstants())
+                    .map(c -> c.name().toLowerCase(Locale.ROOT))
+                    .collect(Collectors.joining(", "));
+            throw new IllegalArgumentException(
+                    "Property " + DK_MADA_STYLE_PROPPREFIX + name + " must be one of " + validValues + ", was '"
+                            + value + "'",
+                    e);
+        }
+    }
+
     private String getProperty(String name, String defaultValue) {
         String value = getNullableProperty(name, defaultValue);
         if (value == null) {
@@ -216,15 +445,31 @@ public class PluginConfiguration {
         return value;
     }
 
-    private @Nullable String getNullableProperty(String name, @Nullable String defaultValue) {
-        Object value = project.findProperty(DK_MADA_STYLE_PROPPREFIX + name);
-        if (value == null) {
-            value = defaultValue;
+    /**
+     * Gets the flag of a feature that configures the root project.
+     *
+     * Such features cannot be used with isolated projects, so they are disabled (with a warning) in that case.
+     *
+     * @param name             the property name
+     * @param isolatedProjects flag for isolated projects being active
+     * @return the feature flag
+     */
+    private boolean getRootConfiguringFeature(String name, boolean isolatedProjects) {
+        boolean enabled = getBoolProperty(name, false);
+        if (enabled && isolatedProjects) {
+            String message = "{}{} configures the root project, so it is ignored with isolated projects";
+            logger.warn(message, DK_MADA_STYLE_PROPPREFIX, name);
+            return false;
         }
+        return enabled;
+    }
+
+    private @Nullable String getNullableProperty(String name, @Nullable String defaultValue) {
+        String value = properties.get(name);
         if (value == null) {
-            return null;
+            return defaultValue;
         }
-        return value.toString();
+        return value;
     }
 
     private List<String> getListProperty(String name, List<String> defaultValue) {
@@ -232,6 +477,9 @@ public class PluginConfiguration {
         if (value == null) {
             return defaultValue;
         }
-        return Stream.of(value.split(",", -1)).map(String::trim).toList();
+        return Stream.of(value.split(",", -1))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toList();
     }
 }
@@ -2,30 +2,46 @@ package dk.mada.style.config;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Reads resource configuration properties.
+ *
+ * The resources are bundled in the plugin jar, so they cannot change while the plugin classes are loaded. The parsed
+ * properties are kept for the lifetime of the plugin classloader, which lets repeat builds in a warm daemon skip the
+ * parsing.
  */
 public final class ResourceConfigProperties {
+    /** The parsed properties, indexed by resource name. */
+    private static final Map<String, Map<String, String>> CACHE = new ConcurrentHashMap<>();
+
     private ResourceConfigProperties() {
         // empty
     }
 
     /**
-     * Reads configuration properties from a named resource.
+     * Gets configuration properties from a named resource.
      *
      * @param name the resource name
-     * @return the read properties
+     * @return the immutable properties
      */
-    public static Properties readConfigProperties(String name) {
+    public static Map<String, String> getConfigProperties(String name) {
+        return CACHE.computeIfAbsent(name, ResourceConfigProperties::readConfigProperties);
+    }
+
+    private static Map<String, String> readConfigProperties(String name) {
         try (InputStream is = ResourceConfigProperties.class.getResourceAsStream(name)) {
             if (is == null) {
                 throw new IllegalStateException("Failed to find resource " + name);
             }
             Properties p = new Properties();
             p.load(is);
-            return p;
+            Map<String, String> result = new HashMap<>();
+            p.stringPropertyNames().forEach(key -> result.put(key, p.getProperty(key)));
+            return Map.copyOf(result);
         } catch (IOException e) {
             throw new IllegalStateException("Failed to read properties from resource " + name, e);
         }
@@ -0,0 +1,134 @@
+package dk.mada.style.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Build service holding the parsed plugin configuration.
+ *
+ * The build's dk.mada.style properties are parsed and validated once per build. Projects without their own
+ * dk.mada.style properties share this configuration. Projects with their own properties get a configuration with
+ * these layered on top of the build's properties.
+ *
+ * The properties seen by a project also include the build's properties (from the root gradle.properties file, the
+ * command line and the Gradle user home). So only the properties with a value differing from the build's properties
+ * are considered the project's own.
+ */
+public abstract class StyleConfigurationService implements BuildService<StyleConfigurationService.Params> {
+    /** The name the service is registered with. */
+    public static final String SERVICE_NAME = "dk.mada.style.configuration";
+    /** The gradle logger. */
+    private static final Logger LOGGER = Logging.getLogger(StyleConfigurationService.class);
+    /** The configuration shared by projects without their own properties. */
+    private @Nullable PluginConfiguration sharedConfiguration;
+
+    /**
+     * Parameters for the service.
+     */
+    public interface Params extends BuildServiceParameters {
+        /** {@return the build's configuration properties, indexed by name without prefix} */
+        MapProperty<String, String> getProperties();
+
+        /** {@return the flag for the build running on a CI server} */
+        Property<Boolean> getCi();
+
+        /** {@return the flag for isolated projects being active} */
+        Property<Boolean> getIsolatedProjects();
+
+        /** {@return the flag for the service being registered by the settings plugin} */
+        Property<Boolean> getSettingsPlugin();
+    }
+
+    /**
+     * Registers the service, unless it has already been registered.
+     *
+     * @param gradle           the gradle instance
+     * @param providers        the provider factory
+     * @param isolatedProjects flag for isolated projects being active
+     * @param settingsPlugin   flag for the registration being made by the settings plugin
+     * @return the service provider
+     */
+    public static Provider<StyleConfigurationService> register(
+            Gradle gradle, ProviderFactory providers, boolean isolatedProjects, boolean settingsPlugin) {
+        return gradle.getSharedServices()
+                .registerIfAbsent(SERVICE_NAME, StyleConfigurationService.class, spec -> {
+                    Params params = spec.getParameters();
+                    params.getProperties().set(PluginConfiguration.readBuildProperties(providers));
+                    params.getCi().set(PluginConfiguration.isCi(providers));
+                    params.getIsolatedProjects().set(isolatedProjects);
+                    params.getSettingsPlugin().set(settingsPlugin);
+                });
+    }
+
+    /**
+     * Gets the configuration for a project.
+     *
+     * @param projectProperties the configuration properties seen by the project, indexed by name without prefix
+     * @return the plugin configuration
+     */
+    public synchronized PluginConfiguration configurationFor(Map<String, String> projectProperties) {
+        Params params = getParameters();
+        Map<String, String> buildProperties = params.getProperties().get();
+        Map<String, String> overrides = new HashMap<>();
+        projectProperties.forEach((key, value) -> {
+            if (!value.equals(buildProperties.get(key))) {
+                overrides.put(key, value);
+            }
+        });
+
+        if (overrides.isEmpty()) {
+            PluginConfiguration shared = sharedConfiguration;
+            if (shared == null) {
+                shared = new PluginConfiguration(
+                        buildProperties,
+                        params.getCi().get(),
+                        params.getIsolatedProjects().get(),
+                        LOGGER);
+                sharedConfiguration = shared;
+            }
+            return shared;
+        }
+
+        Map<String, String> properties = new HashMap<>(buildProperties);
+        properties.putAll(overrides);
+        return new PluginConfiguration(properties, params.getCi().get(), params.getIsolatedProjects().get(), LOGGER);
+    }
+
+    /**
+     * Determines if the ErrorProne tool classpath shared by all projects is available.
+     *
+     * The shared classpath is prepared in the root project by the settings plugin. So it is only available when the
+     * settings plugin is applied, and the build's configuration enables it.
+     *
+     * @return true if the shared tool classpath is available
+     */
+    public boolean isSharedToolClasspathAvailable() {
+        return getParameters().getSettingsPlugin().get()
+                && configurationFor(Map.of()).errorProne().sharedClasspath();
+    }
+
+    /**
+     * Determines if the formatter dependencies are predeclared in the root project.
+     *
+     * The dependencies are predeclared in the root project by the settings plugin. So they are only predeclared when
+     * the settings plugin is applied, and the build's configuration enables it.
+     *
+     * @return true if the formatter dependencies are predeclared
+     */
+    public boolean isFormatterPredeclared() {
+        PluginConfiguration shared = configurationFor(Map.of());
+        return getParameters().getSettingsPlugin().get()
+                && shared.isFormatterActive()
+                && shared.formatter().predeclareDeps();
+    }
+}
@@ -1,53 +1,103 @@
 package dk.mada.style.configurators;
 
-import dk.mada.style.config.ConfigFileExtractor;
+import dk.mada.style.changes.ChangedFilesService;
+import dk.mada.style.config.ConfigFileExtractorService;
 import dk.mada.style.config.PluginConfiguration.CheckstyleConfiguration;
-import java.nio.file.Path;
+import dk.mada.style.tasks.MergeCheckstyleReports;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
 import org.gradle.api.file.Directory;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFile;
 import org.gradle.api.logging.Logger;
+import org.gradle.api.plugins.JavaPluginExtension;
 import org.gradle.api.plugins.quality.Checkstyle;
 import org.gradle.api.plugins.quality.CheckstyleExtension;
+import org.gradle.api.plugins.quality.CheckstyleReports;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.reporting.SingleFileReport;
+import org.gradle.api.resources.TextResource;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.Sync;
 import org.gradle.api.tasks.TaskContainer;
+import org.gradle.api.tasks.TaskProvider;
+import org.jspecify.annotations.Nullable;
 
 /**
  * Configures Checkstyle with preferences.
+ *
+ * The configuration files are only extracted (or downloaded) when the checkstyle tasks need them, so configuration of
+ * the project does no file or network I/O.
+ *
+ * The extracted files are stored outside the project, in locations that differ between machines. So they are
+ * registered as task inputs by content only, allowing build cache entries to be shared between machines. The
+ * suppressions file is copied to a configuration directory in the build directory.
+ *
+ * Each checkstyle task is given its own audit cache file in the build directory (next to the configuration
+ * directory), so unchanged files are not audited again.
+ *
+ * Optionally the checkstyle task of each source set is split into a number of shard tasks, which can run in parallel.
+ * Their reports are merged by a separate task, and the report locations of the replaced task point at the merged
+ * reports.
+ *
+ * In the fast profile the checkstyle tasks are skipped, unless checkstyle is requested explicitly.
+ *
+ * Optionally only the files changed relative to a git reference are checked, and generated source files are
+ * excluded.
  */
 public class CheckstyleConfigurator {
     /** The default configuration resource path. */
     private static final String CHECKSTYLE_CHECKSTYLE_MADA_XML = "checkstyle/checkstyle-mada.xml";
     /** The default suppressions resource path. */
     private static final String CHECKSTYLE_SUPPRESSIONS_MADA_XML = "checkstyle/suppressions-mada.xml";
+    /** The prefix of the checkstyle task names. */
+    private static final String CHECKSTYLE_TASK_PREFIX = "checkstyle";
+    /** The directory of the merged shard reports, relative to the build directory. */
+    private static final String MERGED_REPORTS_DIR = "reports/checkstyle/merged";
+    /** The checkstyle configuration property naming the audit cache file. */
+    private static final String MADA_CACHE_NAME_PROPERTY = "mada_cache_name";
+    /** The checkstyle configuration directory, relative to the build directory. */
+    private static final String CONFIG_DIR = "mada-style/checkstyle-config";
+    /** The audit cache directory, relative to the build directory (and next to the configuration directory). */
+    private static final String CACHE_DIR = "mada-style/checkstyle-cache/";
+    /** The name of the task preparing the checkstyle configuration directory. */
+    private static final String CONFIG_DIR_TASK_NAME = "madaCheckstyleConfig";
     /** The gradle project. */
     private final Project project;
     /** The gradle logger. */
     private final Logger logger;
     /** The checkstyle configuration. */
     private final CheckstyleConfiguration checkstyleConfig;
-    /** The default configuration file shipped with this plugin. */
-    private final Path defaultConfigFile;
-    /** The default file extractor. */
-    private final ConfigFileExtractor configExtractor;
+    /** The configuration file extractor service. */
+    private final Provider<ConfigFileExtractorService> configExtractor;
+    /** The changed files service, or null to check all files. */
+    private final @Nullable Provider<ChangedFilesService> changedFiles;
 
     /**
      * Creates new instance.
      *
      * @param project          the gradle project
      * @param checkstyleConfig the checkstyle configuration
-     * @param configExtractor  the configuration extractor
+     * @param configExtractor  the configuration extractor service
+     * @param changedFiles     the changed files service, or null to check all files
      */
     public CheckstyleConfigurator(
-            Project project, CheckstyleConfiguration checkstyleConfig, ConfigFileExtractor configExtractor) {
+            Project project,
+            CheckstyleConfiguration checkstyleConfig,
+            Provider<ConfigFileExtractorService> configExtractor,
+            @Nullable Provider<ChangedFilesService> changedFiles) {
         this.logger = project.getLogger();
         this.project = project;
         this.checkstyleConfig = checkstyleConfig;
         this.configExtractor = configExtractor;
-
-        defaultConfigFile = configExtractor.getLocalConfigFileFromResource(CHECKSTYLE_CHECKSTYLE_MADA_XML);
-        // The suppressions file is references from the config file
-        configExtractor.getLocalConfigFileFromResource(CHECKSTYLE_SUPPRESSIONS_MADA_XML);
+        this.changedFiles = changedFiles;
     }
 
     /**
@@ -56,14 +106,25 @@ public class CheckstyleConfigurator {
      * @param ce the checkstyle extension
      */
     public void configure(CheckstyleExtension ce) {
-        Path shippedConfigDir = Objects.requireNonNull(defaultConfigFile.getParent());
-        ce.getConfigDirectory().convention(toGradleDir(shippedConfigDir));
+        Provider<File> shippedConfigFile = configExtractor.map(
+                s -> s.extractor().getLocalConfigFileFromResource(CHECKSTYLE_CHECKSTYLE_MADA_XML).toFile());
+        Provider<File> shippedSuppressionsFile = configExtractor.map(
+                s -> s.extractor().getLocalConfigFileFromResource(CHECKSTYLE_SUPPRESSIONS_MADA_XML).toFile());
+        // The suppressions file is referenced (via config_loc) from the config file, so it is copied to a
+        // configuration directory in the project. The audit caches are stored next to this directory.
+        TaskProvider<Sync> configDirTask = project.getTasks().register(CONFIG_DIR_TASK_NAME, Sync.class, t -> {
+            t.setDescription("Prepares the Checkstyle configuration directory");
+            t.usesService(configExtractor);
+            t.from(shippedSuppressionsFile);
+            t.into(project.getLayout().getBuildDirectory().dir(CONFIG_DIR));
+        });
+        ce.getConfigDirectory().convention(project.getLayout().getBuildDirectory().dir(CONFIG_DIR));
 
-        Path activeConfigfile = getActiveConfigfile();
-        logger.info("Checkstyle config {}", activeConfigfile);
+        Provider<File> activeConfigFile = getActiveConfigFile(shippedConfigFile);
+        logger.info("Checkstyle config {}", Objects.requireNonNullElse(checkstyleConfig.configPath(), "mada default"));
 
         ce.setIgnoreFailures(checkstyleConfig.ignoreFailures());
-        ce.setConfigFile(activeConfigfile.toFile());
+        ce.setConfig(project.getResources().getText().fromFile(activeConfigFile));
 
         String toolVersion = checkstyleConfig.toolVersion();
         if (toolVersion != null) {
@@ -73,8 +134,30 @@ public class CheckstyleConfigurator {
         if (checkstyleConfig.ignoreTestSource()) {
             taskContainer.named("checkstyleTest", this::disableTask);
         }
+        if (checkstyleConfig.deferred() && !isCheckstyleRequested()) {
+            // Also covers the shard and merge tasks
+            taskContainer.configureEach(t -> {
+                if (t.getName().startsWith(CHECKSTYLE_TASK_PREFIX)) {
+                    t.onlyIf("deferred by mada style fast profile", _ -> false);
+                }
+            });
+        }
+
+        Provider<String> activeConfigChecksum = getActiveConfigChecksum();
+
+        taskContainer.withType(Checkstyle.class).configureEach(t -> {
+            t.usesService(configExtractor);
+            t.dependsOn(configDirTask);
+            t.getInputs().property("madaConfigChecksum", activeConfigChecksum);
+            configureAuditCache(t, ce.getToolVersion());
+            if (changedFiles != null) {
+                limitToChangedFiles(t, changedFiles);
+            }
+            if (checkstyleConfig.excludeGenerated()) {
+                var classifier = GeneratedSourceClassifier.forProject(project);
+                t.exclude(e -> !e.isDirectory() && classifier.isGenerated(e.getFile()));
+            }
 
-        taskContainer.withType(Checkstyle.class, t -> {
             if (checkstyleConfig.ignoreGeneratedSource() && t.getName().endsWith("Apt")) {
                 disableTask(t);
             } else {
@@ -82,32 +165,194 @@ public class CheckstyleConfigurator {
                 t.setIncludes(checkstyleConfig.includes());
             }
         });
+
+        int parallelism = checkstyleConfig.parallelism();
+        if (parallelism > 1) {
+            project.getExtensions()
+                    .getByType(JavaPluginExtension.class)
+                    .getSourceSets()
+                    .configureEach(ss -> configureShards(ss, parallelism));
+        }
+    }
+
+    /**
+     * Replaces the checkstyle task of a source set with shard tasks.
+     *
+     * The shard tasks ignore failures, leaving failure evaluation to the merge task which uses the settings of the
+     * replaced task. So violations and build failure match those of the replaced task. The merge task also writes
+     * the HTML and SARIF reports required by the replaced task.
+     *
+     * @param ss          the source set
+     * @param parallelism the number of shards
+     */
+    private void configureShards(SourceSet ss, int parallelism) {
+        String taskName = ss.getTaskName("checkstyle", null);
+        boolean isIgnoredTestTask = checkstyleConfig.ignoreTestSource() && "checkstyleTest".equals(taskName);
+        boolean isIgnoredGeneratedTask = checkstyleConfig.ignoreGeneratedSource() && taskName.endsWith("Apt");
+        if (isIgnoredTestTask || isIgnoredGeneratedTask) {
+            return;
+        }
+
+        TaskContainer taskContainer = project.getTasks();
+        // The same files as checked by the shard tasks, so the shards are balanced
+        FileCollection sources = ss.getAllJava().matching(p -> {
+            p.setIncludes(checkstyleConfig.includes());
+            p.setExcludes(checkstyleConfig.excludes());
+        });
+        if (changedFiles != null) {
+            Provider<ChangedFilesService> service = changedFiles;
+            sources = sources.filter(f -> service.get().isChanged(f));
+        }
+        if (checkstyleConfig.excludeGenerated()) {
+            var classifier = GeneratedSourceClassifier.forProject(project);
+            sources = sources.filter(f -> !classifier.isGenerated(f));
+        }
+        var shards = new CheckstyleShards(sources, parallelism);
+
+        List<TaskProvider<Checkstyle>> shardTasks = new ArrayList<>();
+        for (int i = 0; i < parallelism; i++) {
+            int shard = i;
+            shardTasks.add(taskContainer.register(taskName + "Shard" + (shard + 1), Checkstyle.class, t -> {
+                t.setDescription(
+                        "Run Checkstyle analysis for shard " + (shard + 1) + " of " + ss.getName() + " classes");
+                t.setSource(ss.getAllJava());
+                t.setClasspath(ss.getOutput().plus(ss.getCompileClasspath()));
+                t.setIgnoreFailures(true);
+                t.exclude(e -> !e.isDirectory() && !shards.isInShard(e.getFile(), shard));
+                // The HTML and SARIF reports are rendered from the merged XML report
+                t.getReports().getXml().getRequired().set(true);
+                t.getReports().getHtml().getRequired().set(false);
+                t.getReports().getSarif().getRequired().set(false);
+            }));
+        }
+
+        TaskProvider<Checkstyle> replacedTask = taskContainer.named(taskName, Checkstyle.class);
+        Provider<Directory> mergedDir = project.getLayout().getBuildDirectory().dir(MERGED_REPORTS_DIR);
+        Provider<RegularFile> mergedXml = mergedDir.map(d -> d.file(taskName + ".xml"));
+        Provider<RegularFile> mergedHtml = mergedDir.map(d -> d.file(taskName + ".html"));
+        Provider<RegularFile> mergedSarif = mergedDir.map(d -> d.file(taskName + ".sarif"));
+        TaskProvider<MergeCheckstyleReports> mergeTask =
+                taskContainer.register(taskName + "MergeShards", MergeCheckstyleReports.class, t -> {
+                    t.setDescription("Merges the Checkstyle shard reports of " + ss.getName() + " classes");
+                    t.dependsOn(shardTasks);
+                    shardTasks.forEach(st -> t.getShardReports()
+                            .from(st.flatMap(s -> s.getReports().getXml().getOutputLocation())));
+                    t.getMergedReport().set(mergedXml);
+                    t.getMergedHtmlReport().set(ifRequired(replacedTask, CheckstyleReports::getHtml, mergedHtml));
+                    t.getMergedSarifReport().set(ifRequired(replacedTask, CheckstyleReports::getSarif, mergedSarif));
+                    t.getHtmlStylesheet().set(replacedTask.map(CheckstyleConfigurator::htmlStylesheet));
+                    t.getIgnoreFailures().set(replacedTask.map(Checkstyle::getIgnoreFailures));
+                    t.getMaxErrors().set(replacedTask.map(Checkstyle::getMaxErrors));
+                    t.getMaxWarnings().set(replacedTask.map(Checkstyle::getMaxWarnings));
+                });
+
+        // The replaced task points at the merged reports, so their consumers (such as Sonar) find them
+        replacedTask.configure(t -> {
+            t.dependsOn(mergeTask);
+            t.onlyIf("replaced by mada style shards", _ -> false);
+            CheckstyleReports reports = t.getReports();
+            reports.getXml().getOutputLocation().set(mergedXml);
+            reports.getHtml().getOutputLocation().set(mergedHtml);
+            reports.getSarif().getOutputLocation().set(mergedSarif);
+        });
+    }
+
+    /**
+     * Reads the stylesheet configured for the HTML report of a checkstyle task.
+     *
+     * @param t the checkstyle task
+     * @return the stylesheet, or null if the default stylesheet is used
+     */
+    private static @Nullable String htmlStylesheet(Checkstyle t) {
+        TextResource stylesheet = t.getReports().getHtml().getStylesheet();
+        return stylesheet == null ? null : stylesheet.asString();
+    }
+
+    /**
+     * Provides a merged report location if the replaced task is required to write the report.
+     *
+     * @param replacedTask   the replaced checkstyle task
+     * @param reportSelector the selector of the report
+     * @param mergedReport   the merged report location
+     * @return the merged report location, or an absent provider if the report is not required
+     */
+    private Provider<RegularFile> ifRequired(
+            TaskProvider<Checkstyle> replacedTask,
+            Function<CheckstyleReports, SingleFileReport> reportSelector,
+            Provider<RegularFile> mergedReport) {
+        return replacedTask
+                .flatMap(t -> reportSelector.apply(t.getReports()).getRequired())
+                .flatMap(required -> required ? mergedReport : project.getProviders().provider(() -> null));
     }
 
     /**
-     * Convert Path (directory) to a Gradle Directory.
+     * Configures the audit cache file of a checkstyle task.
      *
-     * Seems the easiest (only?) way.
+     * The checkstyle configuration places the cache file relative to the configuration directory (config_loc), named
+     * by the mada_cache_name property. The name only contains the task name and the tool version, so the task inputs
+     * stay free of absolute paths and do not affect the build cache key. Checkstyle itself resets the cache when the
+     * active configuration changes.
      *
-     * @param dir the directory
-     * @return the Gradle Directory
+     * The file is declared as an output, so it is kept when the task is up-to-date or restored from the build cache.
+     *
+     * @param t           the checkstyle task
+     * @param toolVersion the checkstyle tool version
      */
-    private Directory toGradleDir(Path dir) {
-        return project.getLayout()
-                .getProjectDirectory()
-                .dir(dir.toAbsolutePath().toString());
+    private void configureAuditCache(Checkstyle t, String toolVersion) {
+        String cacheName = t.getName() + "-" + toolVersion + ".cache";
+        Map<String, Object> configProperties =
+                new HashMap<>(Objects.requireNonNullElse(t.getConfigProperties(), Map.of()));
+        configProperties.put(MADA_CACHE_NAME_PROPERTY, cacheName);
+        t.setConfigProperties(configProperties);
+
+        Provider<RegularFile> cacheFile = project.getLayout().getBuildDirectory().file(CACHE_DIR + cacheName);
+        t.getOutputs().file(cacheFile).withPropertyName("madaAuditCache");
+    }
+
+    /**
+     * Limits a checkstyle task to check only changed files.
+     *
+     * @param t            the checkstyle task
+     * @param changedFiles the changed files service
+     */
+    private void limitToChangedFiles(Checkstyle t, Provider<ChangedFilesService> changedFiles) {
+        t.usesService(changedFiles);
+        t.exclude(e -> !e.isDirectory() && !changedFiles.get().isChanged(e.getFile()));
+    }
+
+    /**
+     * Determines if checkstyle tasks are requested explicitly on the command line.
+     *
+     * @return true if a checkstyle task is requested
+     */
+    private boolean isCheckstyleRequested() {
+        return project.getGradle().getStartParameter().getTaskNames().stream()
+                .map(name -> name.substring(name.lastIndexOf(':') + 1))
+                .anyMatch(name -> name.startsWith(CHECKSTYLE_TASK_PREFIX));
     }
 
     private void disableTask(Task t) {
-        t.setOnlyIf("disabled by mada style", _ -> false);
+        t.onlyIf("disabled by mada style", _ -> false);
+    }
+
+    private Provider<String> getActiveConfigChecksum() {
+        String configPath = checkstyleConfig.configPath();
+        if (configPath != null) {
+            return configExtractor.map(
+                    s -> s.extractor().getConfigPathChecksum(configPath, checkstyleConfig.configPathTtl()));
+        } else {
+            return configExtractor.map(s -> s.extractor().getResourceChecksum(CHECKSTYLE_CHECKSTYLE_MADA_XML));
+        }
     }
 
-    private Path getActiveConfigfile() {
+    private Provider<File> getActiveConfigFile(Provider<File> shippedConfigFile) {
         String configPath = checkstyleConfig.configPath();
         if (configPath != null) {
-            return configExtractor.getLocalFileFromConfigPath(configPath);
+            return configExtractor.map(s -> s.extractor()
+                    .getLocalFileFromConfigPath(configPath, checkstyleConfig.configPathTtl())
+                    .toFile());
         } else {
-            return defaultConfigFile;
+            return shippedConfigFile;
         }
     }
 }
@@ -0,0 +1,80 @@
+package dk.mada.style.configurators;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gradle.api.file.FileCollection;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Partitions source files into shards of balanced size.
+ *
+ * The files are assigned largest first, each to the shard with the smallest total size so far. The partition is
+ * computed on first use (when the shard tasks run), and is deterministic so separate instances agree on the shard of a
+ * file.
+ */
+public final class CheckstyleShards {
+    /** The files to partition. */
+    private final FileCollection files;
+    /** The number of shards. */
+    private final int shardCount;
+    /** The shard assigned to each file, computed on first use. */
+    private transient @Nullable Map<File, Integer> assignments;
+
+    /**
+     * Creates new instance.
+     *
+     * @param files      the files to partition
+     * @param shardCount the number of shards
+     */
+    public CheckstyleShards(FileCollection files, int shardCount) {
+        this.files = files;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Checks if a file belongs to a shard.
+     *
+     * Files unknown to the partition are assigned to the first shard, so no file is skipped.
+     *
+     * @param file  the file to check
+     * @param shard the shard index
+     * @return true if the file belongs to the shard
+     */
+    public synchronized boolean isInShard(File file, int shard) {
+        return getAssignments().getOrDefault(file, 0) == shard;
+    }
+
+    private Map<File, Integer> getAssignments() {
+        Map<File, Integer> result = assignments;
+        if (result == null) {
+            result = partition();
+            assignments = result;
+        }
+        return result;
+    }
+
+    private Map<File, Integer> partition() {
+        List<Map.Entry<File, Long>> largestFirst = files.getFiles().stream()
+                .map(f -> Map.entry(f, f.length()))
+                .sorted(Map.Entry.<File, Long>comparingByValue()
+                        .reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .toList();
+
+        long[] shardSizes = new long[shardCount];
+        Map<File, Integer> result = new HashMap<>();
+        for (Map.Entry<File, Long> e : largestFirst) {
+            int smallest = 0;
+            for (int i = 1; i < shardCount; i++) {
+                if (shardSizes[i] < shardSizes[smallest]) {
+                    smallest = i;
+                }
+            }
+            result.put(e.getKey(), smallest);
+            shardSizes[smallest] += e.getValue();
+        }
+        return result;
+    }
+}
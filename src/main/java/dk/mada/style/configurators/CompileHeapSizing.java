@@ -0,0 +1,238 @@
+package dk.mada.style.configurators;
+
+import dk.mada.style.report.CompileHeapPlugin;
+import dk.mada.style.report.JavacPluginArgumentProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Properties;
+import org.gradle.api.Project;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.compile.JavaCompile;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Sizes the compiler memory of compile tasks from the heap usage measured in earlier builds.
+ *
+ * The CompileHeapPlugin measures the live heap usage (after garbage collection) of compilations. After the
+ * compilation the measurement is rounded up (with headroom) to a heap size, which is kept in a sizing file in the
+ * build directory.
+ *
+ * When the task is configured in a later build, the sizing file decides how it runs. Compilations needing more heap
+ * than the threshold are run in a forked compiler daemon with the sized maximum heap. Other compilations run
+ * in-process (unless configured otherwise). A compilation without a sizing file is forked with the maximal heap size
+ * to take the first measurement.
+ *
+ * In-process compilations are measured too. They share the heap with the Gradle daemon, so the growth of the live heap
+ * during the compilation is used. When a compilation outgrows the threshold, the next build forks it.
+ *
+ * As the sizing file is in the build directory, builds from a clean checkout (such as most CI builds) fork all
+ * compilations with the maximal heap size. Keep the sizing files between such builds to avoid this.
+ *
+ * The heap size is capped at a multiple of the threshold. Once sized, it only grows when the compilation shows memory
+ * pressure (much time spent collecting garbage, or little free heap after collection). So the sizing file rarely
+ * changes, and the fork options (which are task inputs, and part of the configuration cache) stay stable between
+ * builds.
+ */
+public final class CompileHeapSizing {
+    /** Bytes per MiB. */
+    private static final long BYTES_PER_MIB = 1024L * 1024L;
+    /** The heap sizes are rounded up to a multiple of this (in MiB). */
+    private static final long HEAP_SIZE_STEP_MIB = 128;
+    /** The headroom added to the measured live heap usage (in percent). */
+    private static final long HEAP_HEADROOM_PERCENT = 50;
+    /** The maximal heap size, as a multiple of the fork threshold. */
+    private static final long MAX_HEAP_THRESHOLD_FACTOR = 4;
+    /** The share of the compilation time spent collecting garbage signalling memory pressure (in percent). */
+    private static final long GC_OVERHEAD_PERCENT = 10;
+    /** The share of the maximum heap used after collection signalling memory pressure (in percent). */
+    private static final long LIVE_HEAP_PERCENT = 80;
+    /** The sizing file property key holding the heap size (in MiB). */
+    private static final String HEAP_SIZE_KEY = "heapMiB";
+
+    private CompileHeapSizing() {
+        // empty
+    }
+
+    /**
+     * Configures heap sizing of a compile task.
+     *
+     * Note that the CompileHeapPlugin must be on the annotation processor path of the task.
+     *
+     * @param project          the gradle project
+     * @param jc               the compile task
+     * @param forkThresholdMib the heap size above which the compilation is forked (in MiB)
+     */
+    public static void configure(Project project, JavaCompile jc, long forkThresholdMib) {
+        Logger logger = project.getLogger();
+        String baseName = "mada-style/compile-heap/" + jc.getName();
+        Provider<RegularFile> measurementFile = project.getLayout().getBuildDirectory().file(baseName + ".measured");
+        Provider<RegularFile> sizingFile = project.getLayout().getBuildDirectory().file(baseName + ".properties");
+        long maxHeapMib = forkThresholdMib * MAX_HEAP_THRESHOLD_FACTOR;
+
+        // The fork setting may be changed after this by the build
+        Provider<Boolean> forked = project.provider(() -> jc.getOptions().isFork());
+        jc.getOptions()
+                .getCompilerArgumentProviders()
+                .add(new JavacPluginArgumentProvider(CompileHeapPlugin.NAME, measurementFile));
+
+        @Nullable String sizing = project.getProviders().fileContents(sizingFile).getAsText().getOrNull();
+        long heapMib = sizing == null ? 0 : readSizing(sizing);
+        if (heapMib == 0) {
+            jc.getOptions().setFork(true);
+            jc.getOptions().getForkOptions().setMemoryMaximumSize(maxHeapMib + "m");
+            logger.lifecycle(
+                    "{}: forking compiler with {} MiB max heap to measure heap usage", jc.getPath(), maxHeapMib);
+        } else if (heapMib > forkThresholdMib) {
+            jc.getOptions().setFork(true);
+            jc.getOptions().getForkOptions().setMemoryMaximumSize(heapMib + "m");
+            logger.lifecycle("{}: forking compiler with {} MiB max heap (from measured usage)", jc.getPath(), heapMib);
+        } else {
+            logger.info("{}: compiling in-process, measured usage needs {} MiB heap", jc.getPath(), heapMib);
+        }
+
+        var sizer = new Sizer(heapMib, maxHeapMib);
+        jc.doFirst("Clear compile heap measurement", _ -> measurementFile.get().getAsFile().delete());
+        jc.doLast("Record compile heap usage", t -> recordSizing(
+                t.getLogger(),
+                t.getPath(),
+                measurementFile.get().getAsFile(),
+                sizingFile.get().getAsFile(),
+                sizer,
+                forked.get()));
+    }
+
+    /**
+     * Computes the heap size from a measurement.
+     *
+     * @param currentMib the current heap size (in MiB), or 0 if not sized yet
+     * @param maxMib     the maximal heap size (in MiB)
+     */
+    private record Sizer(long currentMib, long maxMib) implements Serializable {
+        /**
+         * Computes the heap size for the next build.
+         *
+         * @param liveMib     the measured live heap usage (in MiB)
+         * @param hasPressure flag for the compilation showing memory pressure
+         * @return the heap size (in MiB)
+         */
+        long size(long liveMib, boolean hasPressure) {
+            long targetMib = targetMib(liveMib);
+            if (currentMib == 0) {
+                return Math.min(targetMib, maxMib);
+            }
+            if (hasPressure) {
+                return Math.min(Math.max(targetMib, currentMib + HEAP_SIZE_STEP_MIB), maxMib);
+            }
+            return currentMib;
+        }
+
+        /**
+         * Computes the heap size for the next build from an in-process measurement.
+         *
+         * The memory pressure of the Gradle daemon says nothing about the compilation, so the size only grows with the
+         * measured usage.
+         *
+         * @param grownMib the measured growth of the live heap usage (in MiB)
+         * @return the heap size (in MiB)
+         */
+        long sizeInProcess(long grownMib) {
+            return Math.min(Math.max(targetMib(grownMib), currentMib), maxMib);
+        }
+
+        private static long targetMib(long liveMib) {
+            long withHeadroomMib = liveMib * (100 + HEAP_HEADROOM_PERCENT) / 100;
+            return (withHeadroomMib / HEAP_SIZE_STEP_MIB + 1) * HEAP_SIZE_STEP_MIB;
+        }
+    }
+
+    private static void recordSizing(
+            Logger logger, String taskPath, File measurementFile, File sizingFile, Sizer sizer, boolean forked) {
+        try {
+            if (!measurementFile.isFile()) {
+                return;
+            }
+            String measurement = Files.readString(measurementFile.toPath(), StandardCharsets.UTF_8);
+            long liveMib = readLong(measurement, CompileHeapPlugin.LIVE_HEAP_KEY) / BYTES_PER_MIB;
+            long maxMib = readLong(measurement, CompileHeapPlugin.MAX_HEAP_KEY) / BYTES_PER_MIB;
+            long gcMs = readLong(measurement, CompileHeapPlugin.GC_TIME_KEY);
+            long compileMs = readLong(measurement, CompileHeapPlugin.COMPILE_TIME_KEY);
+            boolean hasPressure;
+            long heapMib;
+            if (forked) {
+                boolean hasGcOverhead = compileMs > 0 && gcMs * 100 / compileMs > GC_OVERHEAD_PERCENT;
+                boolean hasLowFreeHeap = maxMib > 0 && liveMib * 100 / maxMib > LIVE_HEAP_PERCENT;
+                hasPressure = hasGcOverhead || hasLowFreeHeap;
+                heapMib = sizer.size(liveMib, hasPressure);
+            } else {
+                long startMib = readLong(measurement, CompileHeapPlugin.START_LIVE_HEAP_KEY) / BYTES_PER_MIB;
+                liveMib = Math.max(0, liveMib - startMib);
+                hasPressure = false;
+                heapMib = sizer.sizeInProcess(liveMib);
+            }
+            String observed = forked ? "live heap" : "in-process live heap growth";
+
+            if (hasPressure && heapMib == sizer.maxMib()) {
+                logger.warn(
+                        "{}: memory pressure with {} MiB live heap of {} MiB max, at the {} MiB heap size limit",
+                        taskPath,
+                        liveMib,
+                        maxMib,
+                        sizer.maxMib());
+            }
+            if (heapMib == sizer.currentMib()) {
+                logger.info(
+                        "{}: observed {} {} MiB of {} MiB max, {} ms of {} ms in GC",
+                        taskPath,
+                        observed,
+                        liveMib,
+                        maxMib,
+                        gcMs,
+                        compileMs);
+                return;
+            }
+            logger.lifecycle(
+                    "{}: observed {} {} MiB of {} MiB max, {} ms of {} ms in GC, sized to {} MiB for next build",
+                    taskPath,
+                    observed,
+                    liveMib,
+                    maxMib,
+                    gcMs,
+                    compileMs,
+                    heapMib);
+            Path sizingPath = sizingFile.toPath();
+            Files.createDirectories(Objects.requireNonNull(sizingPath.getParent()));
+            Files.writeString(sizingPath, HEAP_SIZE_KEY + "=" + heapMib + "\n", StandardCharsets.UTF_8);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("{}: failed to record compile heap usage", taskPath, e);
+        }
+    }
+
+    private static long readSizing(String sizing) {
+        try {
+            return readLong(sizing, HEAP_SIZE_KEY);
+        } catch (IllegalArgumentException e) {
+            // A broken sizing file is replaced after the next compilation
+            return 0;
+        }
+    }
+
+    private static long readLong(String properties, String key) {
+        Properties props = new Properties();
+        try (Reader r = new StringReader(properties)) {
+            props.load(r);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to parse properties", e);
+        }
+        String value = props.getProperty(key);
+        return value == null ? 0 : Long.parseLong(value.trim());
+    }
+}
@@ -1,21 +1,47 @@
 package dk.mada.style.configurators;
 
 import dk.mada.style.config.PluginConfiguration.ErrorProneConfiguration;
+import dk.mada.style.config.PluginConfiguration.ErrorProneMode;
 import dk.mada.style.config.PluginConfiguration.NullcheckerConfiguration;
 import dk.mada.style.config.ResourceConfigProperties;
+import dk.mada.style.report.ErrorProneProfileService;
+import dk.mada.style.report.ErrorProneProfilerPlugin;
+import dk.mada.style.report.JavacPluginArgumentProvider;
+import dk.mada.style.report.JavacPluginsJar;
+import dk.mada.style.report.ToolTimingService;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.Properties;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import net.ltgt.gradle.errorprone.CheckSeverity;
 import net.ltgt.gradle.errorprone.ErrorProneOptions;
 import net.ltgt.gradle.errorprone.ErrorPronePlugin;
+import org.gradle.api.NamedDomainObjectProvider;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.file.ConfigurableFileTree;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFile;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.plugins.ExtensionAware;
+import org.gradle.api.plugins.JavaPluginExtension;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.Sync;
+import org.gradle.api.tasks.TaskContainer;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.compile.CompileOptions;
+import org.gradle.api.tasks.compile.ForkOptions;
 import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.language.base.plugins.LifecycleBasePlugin;
+import org.gradle.process.CommandLineArgumentProvider;
+import org.jspecify.annotations.Nullable;
 
 /**
  * Configures Spotless with formatter preferences.
@@ -23,6 +49,12 @@ import org.gradle.api.tasks.compile.JavaCompile;
 public class ErrorProneConfigurator {
     /** The default configuration resource path. */
     private static final String CONFIG_DATAFILE_DEPENDENCIES_PROPERTIES = "/config/datafile-dependencies.properties";
+    /** The verb used in the names of the ErrorProne analysis tasks. */
+    private static final String ANALYSIS_TASK_VERB = "errorprone";
+    /** The directory storing the measuring javac plugins jar, relative to the Gradle user home. */
+    private static final String JAVAC_PLUGINS_STORAGE = "caches/mada-style/javac-plugins";
+    /** The name prefix of the shared tool classpath configuration and task in the root project. */
+    private static final String SHARED_CLASSPATH_NAME = "madaStyleErrorProneClasspath";
     /** The gradle project. */
     private final Project project;
     /** The gradle logger. */
@@ -31,24 +63,37 @@ public class ErrorProneConfigurator {
     private final ErrorProneConfiguration errorProneConfig;
     /** The null-checker configuration. */
     private final NullcheckerConfiguration nullcheckerConfig;
-    /** The dependency versions used by this plugin. */
-    private final Properties dependencyVersions;
+    /** Flag for the shared tool classpath being prepared in the root project. */
+    private final boolean sharedToolClasspath;
+    /** The ErrorProne profile service, if profiling is active. */
+    private final @Nullable Provider<ErrorProneProfileService> profileService;
+    /** The tool timing service, if timings are recorded. */
+    private final @Nullable Provider<ToolTimingService> timingService;
 
     /**
      * Creates new instance.
      *
-     * @param project           the gradle project
-     * @param errorProneConfig  the ErrorProne configuration
-     * @param nullcheckerConfig the null-checker configuration
+     * @param project             the gradle project
+     * @param errorProneConfig    the ErrorProne configuration
+     * @param nullcheckerConfig   the null-checker configuration
+     * @param sharedToolClasspath flag for the shared tool classpath being prepared in the root project
+     * @param profileService      the ErrorProne profile service, or null if profiling is not active
+     * @param timingService       the tool timing service, or null if timings are not recorded
      */
     public ErrorProneConfigurator(
-            Project project, ErrorProneConfiguration errorProneConfig, NullcheckerConfiguration nullcheckerConfig) {
+            Project project,
+            ErrorProneConfiguration errorProneConfig,
+            NullcheckerConfiguration nullcheckerConfig,
+            boolean sharedToolClasspath,
+            @Nullable Provider<ErrorProneProfileService> profileService,
+            @Nullable Provider<ToolTimingService> timingService) {
         this.project = project;
         this.logger = project.getLogger();
         this.errorProneConfig = errorProneConfig;
         this.nullcheckerConfig = nullcheckerConfig;
-        this.dependencyVersions =
-                ResourceConfigProperties.readConfigProperties(CONFIG_DATAFILE_DEPENDENCIES_PROPERTIES);
+        this.sharedToolClasspath = sharedToolClasspath;
+        this.profileService = profileService;
+        this.timingService = timingService;
     }
 
     /**
@@ -57,53 +102,294 @@ public class ErrorProneConfigurator {
     public void configure() {
         logger.info("dk.mada.style configure errorprone");
 
-        addDependency("com.google.errorprone:error_prone_core");
-        if (nullcheckerConfig.enabled()) {
-            addDependency("com.uber.nullaway:nullaway");
+        List<String> toolDependencies = toolDependencies(nullcheckerConfig.enabled());
+        if (errorProneConfig.sharedClasspath() && sharedToolClasspath) {
+            addSharedToolClasspath(toolDependencies);
+        } else {
+            if (errorProneConfig.sharedClasspath()) {
+                logger.warn("dk.mada.style shared ErrorProne classpath needs the settings plugin and a build-wide"
+                        + " property, using a project classpath in {}", project.getPath());
+            }
+            toolDependencies.forEach(gav -> project.getDependencies().add(ErrorPronePlugin.CONFIGURATION_NAME, gav));
+        }
+        boolean isProfiled = profileService != null || timingService != null;
+        if (isProfiled || errorProneConfig.heapAwareFork()) {
+            // The measuring plugins are loaded by javac from the processor path, along with ErrorProne
+            Path storageDir = project.getGradle().getGradleUserHomeDir().toPath().resolve(JAVAC_PLUGINS_STORAGE);
+            project.getDependencies()
+                    .add(
+                            ErrorPronePlugin.CONFIGURATION_NAME,
+                            project.files(project.provider(() -> JavacPluginsJar.locate(storageDir))));
         }
 
-        project.getTasks().withType(JavaCompile.class, jc -> {
+        boolean isSeparateMode = errorProneConfig.mode() == ErrorProneMode.SEPARATE;
+        project.getTasks().withType(JavaCompile.class).configureEach(jc -> {
             // This trick only found by looking at ErrorProne plugin code (hidden by Groovy/Gradle API)
             ErrorProneOptions er =
                     ((ExtensionAware) jc.getOptions()).getExtensions().getByType(ErrorProneOptions.class);
 
             boolean isTestCodeCompileTask =
                     jc.getName().toLowerCase(Locale.ROOT).contains("test");
-            if (isTestCodeCompileTask && errorProneConfig.ignoreTestSource()) {
+            boolean isAnalysisTask = jc.getName().startsWith(ANALYSIS_TASK_VERB);
+            if (isSeparateMode && !isAnalysisTask) {
+                er.getEnabled().set(false);
+            } else if (isTestCodeCompileTask && errorProneConfig.ignoreTestSource()) {
                 er.getEnabled().set(false);
             } else {
+                if (isAnalysisTask) {
+                    er.getEnabled().set(true);
+                }
                 configureErrorProne(er);
+                if (isProfiled) {
+                    trackProfile(jc);
+                }
+                if (errorProneConfig.heapAwareFork()) {
+                    CompileHeapSizing.configure(project, jc, errorProneConfig.forkThresholdMib());
+                }
             }
         });
+
+        if (isSeparateMode) {
+            project.getExtensions()
+                    .getByType(JavaPluginExtension.class)
+                    .getSourceSets()
+                    .configureEach(this::registerAnalysisTask);
+        }
+    }
+
+    /**
+     * Registers a task running ErrorProne analysis of a source set.
+     *
+     * The task compiles the same sources with the same classpath, processors, arguments, toolchain and fork options as
+     * the source set's compile task. So the findings match those of running ErrorProne in the compile task. But javac
+     * is stopped after analysis, so no class files are written.
+     *
+     * The compile task is left to plain javac, so downstream compilation does not wait for the analysis.
+     *
+     * @param ss the source set
+     */
+    private void registerAnalysisTask(SourceSet ss) {
+        String compileTaskName = ss.getCompileJavaTaskName();
+        boolean isTestCodeCompileTask = compileTaskName.toLowerCase(Locale.ROOT).contains("test");
+        if (isTestCodeCompileTask && errorProneConfig.ignoreTestSource()) {
+            return;
+        }
+
+        TaskContainer taskContainer = project.getTasks();
+        TaskProvider<JavaCompile> compileTask = taskContainer.named(compileTaskName, JavaCompile.class);
+        DirectoryProperty buildDir = project.getLayout().getBuildDirectory();
+        String outputDir = "mada-style/errorprone/" + ss.getName();
+        TaskProvider<JavaCompile> analysisTask =
+                taskContainer.register(ss.getTaskName(ANALYSIS_TASK_VERB, null), JavaCompile.class, t -> {
+                    JavaCompile compile = compileTask.get();
+                    t.setGroup(LifecycleBasePlugin.VERIFICATION_GROUP);
+                    t.setDescription("Runs ErrorProne analysis of " + ss.getName() + " classes");
+                    t.setSource(compile.getSource());
+                    t.setClasspath(compile.getClasspath());
+                    t.getJavaCompiler().set(compile.getJavaCompiler());
+                    t.setSourceCompatibility(compile.getSourceCompatibility());
+                    t.setTargetCompatibility(compile.getTargetCompatibility());
+                    t.getModularity().getInferModulePath().set(compile.getModularity().getInferModulePath());
+                    t.getDestinationDirectory().set(buildDir.dir(outputDir + "/classes"));
+
+                    CompileOptions compileOptions = compile.getOptions();
+                    CompileOptions options = t.getOptions();
+                    options.setEncoding(compileOptions.getEncoding());
+                    options.getRelease().set(compileOptions.getRelease());
+                    copyForkOptions(compileOptions, options);
+                    options.setAnnotationProcessorPath(compileOptions.getAnnotationProcessorPath());
+                    options.getGeneratedSourceOutputDirectory().set(buildDir.dir(outputDir + "/generated"));
+                    options.setCompilerArgs(new ArrayList<>(compileOptions.getCompilerArgs()));
+                    compileOptions.getCompilerArgumentProviders().stream()
+                            .filter(p -> !isErrorProneArgumentProvider(p))
+                            .forEach(p -> options.getCompilerArgumentProviders().add(p));
+                    // Stop javac after the analysis phase (where ErrorProne runs), skipping code generation
+                    options.getCompilerArgs().add("-XDshould-stop.ifNoError=FLOW");
+                    // Incremental compilation relies on the class files, which are not written
+                    options.setIncremental(false);
+                });
+
+        taskContainer.named(LifecycleBasePlugin.CHECK_TASK_NAME, t -> t.dependsOn(analysisTask));
+    }
+
+    /**
+     * Copies the fork options of a compile task, so a forked analysis runs on the same JVM with the same settings.
+     *
+     * With heap-aware forking, the analysis task is forked and sized by its own measurements, so only the JVM and its
+     * arguments are copied.
+     *
+     * @param compileOptions the options of the compile task
+     * @param options        the options of the analysis task
+     */
+    private void copyForkOptions(CompileOptions compileOptions, CompileOptions options) {
+        ForkOptions compileFork = compileOptions.getForkOptions();
+        ForkOptions fork = options.getForkOptions();
+        fork.setExecutable(compileFork.getExecutable());
+        fork.setJavaHome(compileFork.getJavaHome());
+        List<String> jvmArgs = compileFork.getJvmArgs();
+        if (jvmArgs != null) {
+            fork.setJvmArgs(new ArrayList<>(jvmArgs));
+        }
+        fork.getJvmArgumentProviders().addAll(compileFork.getJvmArgumentProviders());
+        if (!errorProneConfig.heapAwareFork()) {
+            options.setFork(compileOptions.isFork());
+            fork.setMemoryInitialSize(compileFork.getMemoryInitialSize());
+            fork.setMemoryMaximumSize(compileFork.getMemoryMaximumSize());
+        }
+    }
+
+    /**
+     * Activates the ErrorProne profiler plugin in a compile task, feeding its profile to the services using it.
+     *
+     * @param jc the compile task
+     */
+    private void trackProfile(JavaCompile jc) {
+        Provider<RegularFile> profileFile = project.getLayout()
+                .getBuildDirectory()
+                .file("mada-style/errorprone-profile/" + jc.getName() + ".properties");
+        jc.getOptions()
+                .getCompilerArgumentProviders()
+                .add(new JavacPluginArgumentProvider(ErrorProneProfilerPlugin.NAME, profileFile));
+        if (profileService != null) {
+            ErrorProneProfileService.track(jc, profileService, profileFile);
+        }
+        if (timingService != null) {
+            ToolTimingService.trackErrorProne(jc, timingService, profileFile);
+        }
+    }
+
+    private static boolean isErrorProneArgumentProvider(CommandLineArgumentProvider provider) {
+        return provider.getClass().getName().startsWith(ErrorPronePlugin.class.getPackageName());
     }
 
     private void configureErrorProne(ErrorProneOptions er) {
-        makeList(errorProneConfig.disabledRules()).forEach(ruleName -> er.check(ruleName, CheckSeverity.OFF));
-        er.getExcludedPaths().set(errorProneConfig.excludePathsRegexp());
+        List<String> onlyChecks = errorProneConfig.onlyChecks();
+        if (!onlyChecks.isEmpty()) {
+            er.getDisableAllChecks().set(true);
+            onlyChecks.forEach(checkName -> er.check(checkName, CheckSeverity.DEFAULT));
+        }
+        errorProneConfig.disabledRules().forEach(ruleName -> er.check(ruleName, CheckSeverity.OFF));
+        er.getExcludedPaths().set(getExcludedPathsRegexp());
         er.getDisableWarningsInGeneratedCode().set(errorProneConfig.ignoreGeneratedSource());
 
         if (nullcheckerConfig.enabled()) {
             er.check("NullAway", CheckSeverity.ERROR);
-            er.option("NullAway:AnnotatedPackages", makeValidNoSpaceString(nullcheckerConfig.includePackages()));
-            er.option("NullAway:UnannotatedSubPackages", makeValidNoSpaceString(nullcheckerConfig.excludePackages()));
+            er.option("NullAway:AnnotatedPackages", String.join(",", nullcheckerConfig.includePackages()));
+            er.option("NullAway:UnannotatedSubPackages", String.join(",", nullcheckerConfig.excludePackages()));
             er.option(
                     "NullAway:ExcludedFieldAnnotations",
-                    makeValidNoSpaceString(nullcheckerConfig.excludedFieldAnnotations()));
+                    String.join(",", nullcheckerConfig.excludedFieldAnnotations()));
         }
     }
 
-    private void addDependency(String groupArtifact) {
-        String version = dependencyVersions.getProperty(groupArtifact);
-        String gav = groupArtifact + ":"
-                + Objects.requireNonNull(version, "Did not find version for dependency '" + groupArtifact + "'");
-        project.getDependencies().add(ErrorPronePlugin.CONFIGURATION_NAME, gav);
+    private String getExcludedPathsRegexp() {
+        String excludePathsRegexp = errorProneConfig.excludePathsRegexp();
+        if (!errorProneConfig.excludeGenerated()) {
+            return excludePathsRegexp;
+        }
+        String generatedPathRegexp = GeneratedSourceClassifier.forProject(project).pathRegexp();
+        if (excludePathsRegexp.isBlank()) {
+            return generatedPathRegexp;
+        }
+        return "(" + excludePathsRegexp + ")|(" + generatedPathRegexp + ")";
     }
 
-    private static String makeValidNoSpaceString(String s) {
-        return Stream.of(s.split(",", -1)).map(String::trim).collect(Collectors.joining(","));
+    /**
+     * Registers the resolution of the ErrorProne tool classpaths shared by all projects.
+     *
+     * This is called by the settings plugin when the root project is configured, so the root project is only ever
+     * configured by itself. A classpath is registered with and without NullAway, as projects may differ in their use
+     * of NullAway. The tasks are only realized if a project uses their classpath.
+     *
+     * The resolution uses dependency locking, so the tool classpaths can be locked with --write-locks.
+     *
+     * Note that the tool dependencies are resolved with the repositories of the root project.
+     *
+     * @param rootProject the root project
+     */
+    public static void registerSharedToolClasspaths(Project rootProject) {
+        for (boolean withNullAway : List.of(false, true)) {
+            List<String> toolDependencies = toolDependencies(withNullAway);
+            String name = sharedClasspathName(withNullAway);
+            NamedDomainObjectProvider<Configuration> toolClasspath =
+                    rootProject.getConfigurations().register(name, c -> {
+                        c.setDescription("The ErrorProne tool classpath shared by all projects");
+                        c.setCanBeConsumed(false);
+                        c.getResolutionStrategy().activateDependencyLocking();
+                        toolDependencies.forEach(gav ->
+                                c.getDependencies().add(rootProject.getDependencies().create(gav)));
+                    });
+            Directory sharedDir = sharedClasspathDirectory(rootProject, toolDependencies);
+            rootProject.getTasks().register(name, Sync.class, t -> {
+                t.setDescription("Resolves the ErrorProne tool classpath shared by all projects");
+                t.from(toolClasspath);
+                t.into(sharedDir);
+            });
+        }
     }
 
-    private static List<String> makeList(String s) {
-        return Stream.of(s.split(",", -1)).map(String::trim).toList();
+    /**
+     * Adds the ErrorProne tool classpath shared by all projects.
+     *
+     * The tool dependencies are resolved once per build by a task in the root project (see
+     * {@link #registerSharedToolClasspaths(Project)}). It copies the files to a directory, which all projects use as
+     * their tool classpath. So the tool dependency graph is not resolved in each project.
+     *
+     * The projects only refer to the task by its path, so this works with isolated projects.
+     *
+     * @param toolDependencies the tool dependencies
+     */
+    private void addSharedToolClasspath(List<String> toolDependencies) {
+        ConfigurableFileTree sharedFiles = project.fileTree(sharedClasspathDirectory(project, toolDependencies));
+        sharedFiles.include("*.jar");
+        sharedFiles.builtBy(":" + sharedClasspathName(nullcheckerConfig.enabled()));
+        project.getDependencies().add(ErrorPronePlugin.CONFIGURATION_NAME, sharedFiles);
+    }
+
+    private static String sharedClasspathName(boolean withNullAway) {
+        return SHARED_CLASSPATH_NAME + (withNullAway ? "NullAway" : "");
+    }
+
+    /**
+     * Provides the directory holding a shared tool classpath.
+     *
+     * The directory is in the project cache directory of the root project, named by a checksum of the tool
+     * dependencies. So changed tool versions get a new directory.
+     *
+     * @param project          the project
+     * @param toolDependencies the tool dependencies
+     * @return the shared classpath directory
+     */
+    private static Directory sharedClasspathDirectory(Project project, List<String> toolDependencies) {
+        String key = HexFormat.of().formatHex(newSha256Digest()
+                .digest(String.join(",", toolDependencies).getBytes(StandardCharsets.UTF_8)));
+        return project.getIsolated()
+                .getRootProject()
+                .getProjectDirectory()
+                .dir(".gradle/mada-style/errorprone-classpath/" + key);
+    }
+
+    private static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to make checksum", e);
+        }
+    }
+
+    private static List<String> toolDependencies(boolean withNullAway) {
+        List<String> toolDependencies = new ArrayList<>();
+        toolDependencies.add(toGav("com.google.errorprone:error_prone_core"));
+        if (withNullAway) {
+            toolDependencies.add(toGav("com.uber.nullaway:nullaway"));
+        }
+        return toolDependencies;
+    }
+
+    private static String toGav(String groupArtifact) {
+        String version = ResourceConfigProperties.getConfigProperties(CONFIG_DATAFILE_DEPENDENCIES_PROPERTIES)
+                .get(groupArtifact);
+        return groupArtifact + ":"
+                + Objects.requireNonNull(version, "Did not find version for dependency '" + groupArtifact + "'");
     }
 }
@@ -0,0 +1,149 @@
+package dk.mada.style.configurators;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gradle.api.Project;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+
+/**
+ * Classifies source files as generated or not.
+ *
+ * A source file is generated if it is located below the generated sources roots of the project's build directory
+ * (where annotation processors and code generators such as OpenAPI write their output), or if its header (the part
+ * before the type declaration) contains a {@code @Generated} annotation. Annotations such as {@code @GeneratedValue}
+ * do not count.
+ *
+ * The same classification is used to prune generated files from all the style tools. Checkstyle uses the file based
+ * classification directly. ErrorProne and Spotless match paths and content, so they use the path expression, files
+ * and annotation expression provided here. The path expression is relative to the project, so it does not affect the
+ * relocatability of the compile tasks.
+ */
+public final class GeneratedSourceClassifier {
+    /** Regular expression matching the Generated annotations. */
+    public static final String GENERATED_ANNOTATION_REGEXP =
+            "@(javax\\.annotation\\.(processing\\.)?|jakarta\\.annotation\\.)?Generated\\b";
+    /** The names of the generated sources roots in the build directory. */
+    private static final List<String> GENERATED_ROOT_NAMES = List.of("generated", "generated-sources");
+    /** Pattern matching the Generated annotations. */
+    private static final Pattern GENERATED_ANNOTATION = Pattern.compile(GENERATED_ANNOTATION_REGEXP);
+    /** Pattern matching the start of a type declaration, which ends the file header. */
+    private static final Pattern TYPE_DECLARATION =
+            Pattern.compile("^\\s*(\\w+\\s+)*(class|interface|enum|record|@interface)\\s");
+    /** The generated sources roots. */
+    private final List<Path> generatedRoots;
+    /** The build directory relative to the project directory, using forward slashes. */
+    private final String relativeBuildDir;
+    /** The classified files, indexed by path. */
+    private final Map<Path, Classification> classifications = new ConcurrentHashMap<>();
+
+    /**
+     * The classification of a file.
+     *
+     * @param lastModified the last modified time of the file when classified
+     * @param generated    flag for the file being generated
+     */
+    private record Classification(long lastModified, boolean generated) {}
+
+    /**
+     * Creates new instance.
+     *
+     * @param projectDir the project directory
+     * @param buildDir   the project build directory
+     */
+    public GeneratedSourceClassifier(File projectDir, File buildDir) {
+        Path buildPath = buildDir.toPath().toAbsolutePath().normalize();
+        this.generatedRoots = GENERATED_ROOT_NAMES.stream().map(buildPath::resolve).toList();
+
+        Path projectPath = projectDir.toPath().toAbsolutePath().normalize();
+        Path buildRelative = buildPath.startsWith(projectPath) ? projectPath.relativize(buildPath) : buildPath;
+        this.relativeBuildDir = buildRelative.toString().replace('\\', '/');
+    }
+
+    /**
+     * Creates a classifier for a project, using its current build directory.
+     *
+     * @param project the project
+     * @return the classifier
+     */
+    public static GeneratedSourceClassifier forProject(Project project) {
+        return new GeneratedSourceClassifier(
+                project.getProjectDir(), project.getLayout().getBuildDirectory().get().getAsFile());
+    }
+
+    /**
+     * Provides a regular expression matching the paths of generated source files, for ErrorProne's excluded paths.
+     *
+     * @return the regular expression
+     */
+    public String pathRegexp() {
+        String buildDirRegexp = Stream.of(relativeBuildDir.split("/"))
+                .filter(s -> !s.isEmpty())
+                .map(Pattern::quote)
+                .collect(Collectors.joining("[/\\\\]"));
+        String rootsRegexp = GENERATED_ROOT_NAMES.stream().map(Pattern::quote).collect(Collectors.joining("|"));
+        return ".*[/\\\\]" + buildDirRegexp + "[/\\\\](" + rootsRegexp + ")[/\\\\].*";
+    }
+
+    /**
+     * Provides the files in the generated sources roots of a build directory, for Spotless.
+     *
+     * @param buildDirectory the build directory
+     * @return the generated files, resolved when used
+     */
+    public static FileCollection generatedFiles(DirectoryProperty buildDirectory) {
+        return buildDirectory
+                .getAsFileTree()
+                .matching(p -> GENERATED_ROOT_NAMES.forEach(name -> p.include(name + "/**")));
+    }
+
+    /**
+     * Determines if a source file is generated.
+     *
+     * The classification of a file is kept until the file is changed.
+     *
+     * @param file the source file
+     * @return true if the file is generated
+     */
+    public boolean isGenerated(File file) {
+        Path path = file.toPath().toAbsolutePath();
+        if (generatedRoots.stream().anyMatch(path::startsWith)) {
+            return true;
+        }
+        long lastModified = file.lastModified();
+        Classification classification = classifications.get(path);
+        if (classification == null || classification.lastModified() != lastModified) {
+            classification = new Classification(lastModified, hasGeneratedAnnotation(path));
+            classifications.put(path, classification);
+        }
+        return classification.generated();
+    }
+
+    private static boolean hasGeneratedAnnotation(Path path) {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (GENERATED_ANNOTATION.matcher(line).find()) {
+                    return true;
+                }
+                if (TYPE_DECLARATION.matcher(line).find()) {
+                    return false;
+                }
+            }
+            return false;
+        } catch (IOException _) {
+            // Unreadable files are left for the tools to report
+            return false;
+        }
+    }
+}
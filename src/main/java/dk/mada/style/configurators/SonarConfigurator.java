@@ -1,26 +1,53 @@
 package dk.mada.style.configurators;
 
 import dk.mada.style.config.PluginConfiguration.SonarConfiguration;
+import java.io.File;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.logging.Logger;
+import org.gradle.api.plugins.JavaPluginExtension;
 import org.gradle.api.plugins.PluginContainer;
 import org.gradle.api.plugins.quality.Checkstyle;
 import org.gradle.api.plugins.quality.CheckstylePlugin;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.reporting.SingleFileReport;
 import org.gradle.api.tasks.TaskContainer;
 import org.gradle.testing.jacoco.plugins.JacocoPlugin;
 import org.gradle.testing.jacoco.tasks.JacocoReport;
+import org.jspecify.annotations.Nullable;
 import org.sonarqube.gradle.SonarExtension;
 import org.sonarqube.gradle.SonarTask;
 
 /**
  * Configures Sonar.
+ *
+ * Sonar depends only on the report tasks whose reports it imports. Unless configured explicitly, these are the
+ * checkstyle report of the main source set and the JaCoCo report of the tests, and the report paths are set
+ * accordingly.
+ *
+ * Optionally the analysis is skipped when its inputs are unchanged since the last successful analysis. The inputs
+ * are only known for a project without subprojects, so the analysis of a project with subprojects is never skipped.
  */
 public class SonarConfigurator {
+    /** The sonar property listing the imported checkstyle reports. */
+    private static final String CHECKSTYLE_REPORT_PATHS = "sonar.java.checkstyle.reportPaths";
+    /** The sonar property listing the imported JaCoCo reports. */
+    private static final String JACOCO_REPORT_PATHS = "sonar.coverage.jacoco.xmlReportPaths";
+    /** The checkstyle task whose report is imported by default. */
+    private static final String DEFAULT_CHECKSTYLE_TASK = "checkstyleMain";
+    /** The JaCoCo task whose report is imported by default. */
+    private static final String DEFAULT_JACOCO_TASK = "jacocoTestReport";
     /** The gradle project. */
     private final Project project;
     /** The gradle logger. */
@@ -48,35 +75,229 @@ public class SonarConfigurator {
     public void configure(SonarExtension se) {
         logger.info("dk.mada.style configure sonar");
 
+        Provider<Map<String, String>> inputProps = project.getProviders()
+                .gradlePropertiesPrefixedBy("dk.mada.style.sonar.")
+                .map(SonarConfigurator::sonarInputProperties);
+
         TaskContainer taskContainer = project.getTasks();
         PluginContainer plugins = project.getPlugins();
 
-        // Make sonar depend on some other check tasks (we want sonar to run last)
-        taskContainer.withType(SonarTask.class, sonarTask -> {
-            plugins.withType(CheckstylePlugin.class)
-                    .whenPluginAdded(_ -> taskContainer.withType(Checkstyle.class, sonarTask::dependsOn));
+        // Make sonar depend on the report tasks it imports (we want sonar to run last)
+        // The report tasks are only resolved if the sonar task is part of the task graph
+        taskContainer.withType(SonarTask.class).configureEach(sonarTask -> {
+            plugins.withType(
+                    CheckstylePlugin.class,
+                    _ -> sonarTask.dependsOn(importedReportTasks(
+                            Checkstyle.class,
+                            t -> t.getReports().getXml(),
+                            CHECKSTYLE_REPORT_PATHS,
+                            DEFAULT_CHECKSTYLE_TASK,
+                            inputProps)));
 
-            plugins.withType(JacocoPlugin.class)
-                    .whenPluginAdded(_ -> taskContainer.withType(JacocoReport.class, sonarTask::dependsOn));
+            plugins.withType(
+                    JacocoPlugin.class,
+                    _ -> sonarTask.dependsOn(importedReportTasks(
+                            JacocoReport.class,
+                            t -> t.getReports().getXml(),
+                            JACOCO_REPORT_PATHS,
+                            DEFAULT_JACOCO_TASK,
+                            inputProps)));
         });
 
-        // Map<String, String> inputProps =
-        Provider<Map<String, String>> inputProps = project.getProviders()
-                .gradlePropertiesPrefixedBy("dk.mada.style.sonar.")
-                .map(m -> m.entrySet().stream()
-                        .filter(e -> !e.getKey().equals("dk.mada.style.sonar.enabled"))
-                        .filter(e -> e.getKey().startsWith("dk.mada.style.sonar."))
-                        .collect(Collectors.toMap(
-                                e -> e.getKey().replace("dk.mada.style.", ""), e -> Objects.toString(e.getValue()))));
+        // Sonar imports XML reports only
+        plugins.withType(JacocoPlugin.class, _ -> taskContainer.withType(JacocoReport.class)
+                .configureEach(t -> {
+                    if (t.getName().equals(DEFAULT_JACOCO_TASK)) {
+                        t.getReports().getXml().getRequired().set(true);
+                    }
+                }));
 
         se.properties(sp -> {
-            Map<String, String> combinedMadaSonarProps = new HashMap<>();
-            combinedMadaSonarProps.putAll(sonarConfig.madaConventionProperties());
-            combinedMadaSonarProps.putAll(inputProps.get());
+            Map<String, String> combinedMadaSonarProps = combinedProperties(inputProps);
 
             logger.info("Set sonar properties: {}", combinedMadaSonarProps);
 
             combinedMadaSonarProps.forEach(sp::property);
         });
+
+        if (sonarConfig.skipUnchanged()) {
+            taskContainer.withType(SonarTask.class).configureEach(this::configureSkipUnchanged);
+        }
+    }
+
+    /**
+     * Combines the sonar properties set by the plugin.
+     *
+     * @param inputProps the sonar properties configured via the plugin
+     * @return the combined sonar properties
+     */
+    private Map<String, String> combinedProperties(Provider<Map<String, String>> inputProps) {
+        return mergeProperties(sonarConfig.madaConventionProperties(), defaultReportPaths(), inputProps.get());
+    }
+
+    /**
+     * Selects the sonar properties configured via the plugin.
+     *
+     * The plugin's own sonar options are left out, and the dk.mada.style. prefix is removed.
+     *
+     * @param gradleProps the Gradle properties prefixed with dk.mada.style.sonar.
+     * @return the sonar properties
+     */
+    static Map<String, String> sonarInputProperties(Map<String, ?> gradleProps) {
+        return gradleProps.entrySet().stream()
+                .filter(e -> !e.getKey().equals("dk.mada.style.sonar.enabled"))
+                .filter(e -> !e.getKey().equals("dk.mada.style.sonar.skip-unchanged"))
+                .filter(e -> e.getKey().startsWith("dk.mada.style.sonar."))
+                .collect(Collectors.toMap(
+                        e -> e.getKey().replace("dk.mada.style.", ""), e -> Objects.toString(e.getValue())));
+    }
+
+    /**
+     * Merges the sonar properties, later sources taking precedence.
+     *
+     * @param conventionProps the convention properties of the plugin
+     * @param reportPaths     the default report paths
+     * @param inputProps      the sonar properties configured via the plugin
+     * @return the merged sonar properties
+     */
+    static Map<String, String> mergeProperties(
+            Map<String, String> conventionProps, Map<String, String> reportPaths, Map<String, String> inputProps) {
+        Map<String, String> combinedMadaSonarProps = new HashMap<>();
+        combinedMadaSonarProps.putAll(conventionProps);
+        combinedMadaSonarProps.putAll(reportPaths);
+        combinedMadaSonarProps.putAll(inputProps);
+        return combinedMadaSonarProps;
+    }
+
+    /**
+     * Makes the sonar task skip the analysis if its inputs are unchanged since the last successful analysis.
+     *
+     * The inputs are the sources and binaries of the project's source sets, the imported reports, the effective sonar
+     * properties of the task and the VCS revision. The effective properties include those set via the sonar DSL and
+     * system properties, such as the branch and pull request keys. Credentials are left out.
+     *
+     * The sonar task of a project with subprojects also analyses the subprojects. Their inputs cannot be accessed
+     * (with isolated projects), so this analysis is never skipped.
+     *
+     * @param sonarTask the sonar task
+     */
+    private void configureSkipUnchanged(SonarTask sonarTask) {
+        if (!project.getChildProjects().isEmpty()) {
+            logger.warn(
+                    "dk.mada.style sonar.skip-unchanged ignored for {}, its analysis includes the subprojects",
+                    sonarTask.getPath());
+            return;
+        }
+
+        Provider<Map<String, String>> properties = sonarTask.getProperties().map(SonarFingerprint::withoutCredentials);
+        ConfigurableFileCollection files = project.files();
+        project.getExtensions()
+                .getByType(JavaPluginExtension.class)
+                .getSourceSets()
+                .configureEach(ss -> files.from(ss.getAllSource(), ss.getOutput().getClassesDirs()));
+        files.from(properties.map(props -> Stream.of(CHECKSTYLE_REPORT_PATHS, JACOCO_REPORT_PATHS)
+                .map(props::get)
+                .filter(Objects::nonNull)
+                .flatMap(paths -> Stream.of(paths.split(",", -1)))
+                .map(String::trim)
+                .filter(path -> !path.isEmpty())
+                .toList()));
+        File fingerprintFile = project.getLayout()
+                .getBuildDirectory()
+                .file("mada-style/sonar.fingerprint")
+                .get()
+                .getAsFile();
+        var fingerprint = new SonarFingerprint(files, properties, project.getProjectDir(), fingerprintFile);
+
+        sonarTask.onlyIf("sonar inputs changed since last analysis", t -> !fingerprint.isUnchanged(t.getLogger()));
+        sonarTask.doLast("Record sonar inputs fingerprint", t -> fingerprint.record(t.getLogger()));
+    }
+
+    /**
+     * Provides the report paths of the default report tasks.
+     *
+     * These are used unless the report paths are configured explicitly.
+     *
+     * @return the sonar report path properties
+     */
+    private Map<String, String> defaultReportPaths() {
+        Map<String, String> reportPaths = new HashMap<>();
+        if (realizeIfPresent(DEFAULT_CHECKSTYLE_TASK) instanceof Checkstyle cs) {
+            reportPaths.put(CHECKSTYLE_REPORT_PATHS, xmlReportPath(cs.getReports().getXml()));
+        }
+        if (realizeIfPresent(DEFAULT_JACOCO_TASK) instanceof JacocoReport jr) {
+            reportPaths.put(JACOCO_REPORT_PATHS, xmlReportPath(jr.getReports().getXml()));
+        }
+        return reportPaths;
+    }
+
+    /**
+     * Realizes a task, if it is registered.
+     *
+     * Unlike findByName, this does not realize other tasks.
+     *
+     * @param name the task name
+     * @return the task, or null if it is not registered
+     */
+    private @Nullable Task realizeIfPresent(String name) {
+        TaskContainer taskContainer = project.getTasks();
+        return taskContainer.getNames().contains(name) ? taskContainer.named(name).get() : null;
+    }
+
+    /**
+     * Finds the report tasks whose XML reports are imported by sonar.
+     *
+     * If the report paths are configured explicitly, these are the tasks writing to one of the paths. Otherwise it is
+     * the default report task.
+     *
+     * Only tasks whose name ends with the name of a configured report file (without extension) are realized and
+     * checked. This matches the default report locations, such as main.xml for checkstyleMain and
+     * jacocoTestReport.xml for jacocoTestReport.
+     *
+     * @param <T>             the report task type
+     * @param type            the report task type
+     * @param xmlReport       function providing the XML report of a task
+     * @param reportPathsKey  the sonar property listing the imported reports
+     * @param defaultTaskName the name of the default report task
+     * @param inputProps      the sonar properties configured via the plugin
+     * @return a callable providing the report tasks
+     */
+    private <T extends Task> Callable<List<T>> importedReportTasks(
+            Class<T> type,
+            Function<T, SingleFileReport> xmlReport,
+            String reportPathsKey,
+            String defaultTaskName,
+            Provider<Map<String, String>> inputProps) {
+        TaskContainer taskContainer = project.getTasks();
+        return () -> {
+            String configuredPaths = inputProps.get().get(reportPathsKey);
+            if (configuredPaths == null) {
+                return Stream.ofNullable(realizeIfPresent(defaultTaskName))
+                        .filter(type::isInstance)
+                        .map(type::cast)
+                        .toList();
+            }
+            Set<File> reportFiles = Stream.of(configuredPaths.split(",", -1))
+                    .map(String::trim)
+                    .filter(path -> !path.isEmpty())
+                    .map(path -> project.file(path).getAbsoluteFile())
+                    .collect(Collectors.toSet());
+            Set<String> reportNames = reportFiles.stream()
+                    .map(f -> f.getName().replaceFirst("\\.[^.]*$", "").toLowerCase(Locale.ROOT))
+                    .collect(Collectors.toSet());
+            List<String> candidates = taskContainer.getNames().stream()
+                    .filter(name -> reportNames.stream().anyMatch(name.toLowerCase(Locale.ROOT)::endsWith))
+                    .toList();
+            return candidates.stream()
+                    .map(name -> taskContainer.named(name).get())
+                    .filter(type::isInstance)
+                    .map(type::cast)
+                    .filter(t -> reportFiles.contains(new File(xmlReportPath(xmlReport.apply(t)))))
+                    .toList();
+        };
+    }
+
+    private static String xmlReportPath(SingleFileReport xml) {
+        return xml.getOutputLocation().get().getAsFile().getAbsolutePath();
     }
 }
@@ -0,0 +1,195 @@
+package dk.mada.style.configurators;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.Provider;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Fingerprint of the inputs of a sonar analysis.
+ *
+ * The fingerprint covers the content of the source, binary and report files, the sonar properties and the VCS
+ * revision. When it matches the fingerprint recorded after the last successful analysis, the analysis would not
+ * provide new results, so it can be skipped.
+ *
+ * The fingerprint is computed once, when checking if the inputs are unchanged, and that value is recorded after the
+ * analysis.
+ */
+public final class SonarFingerprint {
+    /** The size of the buffer used for hashing file content. */
+    private static final int BUFFER_SIZE = 8192;
+    /** The words identifying sonar properties with credentials. */
+    private static final List<String> CREDENTIAL_WORDS = List.of("login", "password", "secret", "token");
+    /** The files to include. */
+    private final FileCollection files;
+    /** The sonar properties. */
+    private final Provider<Map<String, String>> properties;
+    /** The project directory, used to find the VCS revision. */
+    private final File projectDir;
+    /** The file the fingerprint of the last successful analysis is recorded in. */
+    private final File fingerprintFile;
+    /** The fingerprint of the current inputs, if computed. */
+    private volatile @Nullable String current;
+
+    /**
+     * Creates new instance.
+     *
+     * @param files           the source, binary and report files to include
+     * @param properties      the sonar properties
+     * @param projectDir      the project directory
+     * @param fingerprintFile the file to record the fingerprint in
+     */
+    public SonarFingerprint(
+            FileCollection files, Provider<Map<String, String>> properties, File projectDir, File fingerprintFile) {
+        this.files = files;
+        this.properties = properties;
+        this.projectDir = projectDir;
+        this.fingerprintFile = fingerprintFile;
+    }
+
+    /**
+     * Removes the credentials from sonar properties.
+     *
+     * Credentials do not affect the analysis result, and must not end up in the fingerprint file.
+     *
+     * @param properties the sonar properties
+     * @return the properties without credentials
+     */
+    public static Map<String, String> withoutCredentials(Map<String, String> properties) {
+        Map<String, String> result = new TreeMap<>();
+        properties.forEach((k, v) -> {
+            String key = k.toLowerCase(Locale.ROOT);
+            if (CREDENTIAL_WORDS.stream().noneMatch(key::contains)) {
+                result.put(k, v);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Determines if the inputs are unchanged since the last recorded analysis.
+     *
+     * @param logger the logger to use
+     * @return true if the inputs are unchanged
+     */
+    public boolean isUnchanged(Logger logger) {
+        Path recorded = fingerprintFile.toPath();
+        current = null;
+        try {
+            String fingerprint = compute();
+            current = fingerprint;
+            if (!Files.isRegularFile(recorded)) {
+                return false;
+            }
+            boolean isUnchanged = fingerprint.equals(Files.readString(recorded, StandardCharsets.UTF_8));
+            logger.info("Sonar inputs fingerprint {} {}", fingerprint, isUnchanged ? "unchanged" : "changed");
+            return isUnchanged;
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Failed to compare sonar inputs fingerprint, running analysis", e);
+            return false;
+        }
+    }
+
+    /**
+     * Records the fingerprint of the inputs.
+     *
+     * This is the fingerprint computed when checking if the inputs were unchanged. If that failed, nothing is
+     * recorded, so the next analysis will run.
+     *
+     * @param logger the logger to use
+     */
+    public void record(Logger logger) {
+        Path recorded = fingerprintFile.toPath();
+        try {
+            Files.deleteIfExists(recorded);
+            String fingerprint = current;
+            if (fingerprint == null) {
+                return;
+            }
+            Files.createDirectories(Objects.requireNonNull(recorded.toAbsolutePath().getParent()));
+            Files.writeString(recorded, fingerprint, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Failed to record sonar inputs fingerprint", e);
+        }
+    }
+
+    private String compute() throws IOException {
+        MessageDigest digest = newSha256Digest();
+        update(digest, "revision=" + vcsRevision());
+        new TreeMap<>(properties.get()).forEach((k, v) -> update(digest, "property:" + k + "=" + v));
+
+        Set<Path> allFiles = new TreeSet<>();
+        for (File f : files.getFiles()) {
+            Path p = f.toPath();
+            if (Files.isDirectory(p)) {
+                try (Stream<Path> walk = Files.walk(p)) {
+                    walk.filter(Files::isRegularFile).forEach(allFiles::add);
+                }
+            } else if (Files.isRegularFile(p)) {
+                allFiles.add(p);
+            }
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (Path p : allFiles) {
+            update(digest, "file:" + p.toAbsolutePath());
+            try (InputStream is = Files.newInputStream(p)) {
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private String vcsRevision() {
+        try {
+            Process process = new ProcessBuilder("git", "rev-parse", "HEAD")
+                    .directory(projectDir)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            String output;
+            try (InputStream is = process.getInputStream()) {
+                output = new String(is.readAllBytes(), StandardCharsets.UTF_8).trim();
+            }
+            return process.waitFor() == 0 ? output : "unknown";
+        } catch (IOException _) {
+            return "unknown";
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+            return "unknown";
+        }
+    }
+
+    private static void update(MessageDigest digest, String text) {
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to get SHA-256 digest", e);
+        }
+    }
+}
@@ -2,28 +2,55 @@ package dk.mada.style.configurators;
 
 import com.diffplug.gradle.spotless.JavaExtension;
 import com.diffplug.gradle.spotless.SpotlessExtension;
+import com.diffplug.gradle.spotless.SpotlessExtensionPredeclare;
+import com.diffplug.gradle.spotless.SpotlessPlugin;
+import com.diffplug.gradle.spotless.SpotlessTask;
+import dk.mada.style.changes.ChangedFilesService;
 import dk.mada.style.config.PluginConfiguration.FormatterConfiguration;
+import java.util.ArrayList;
 import java.util.List;
+import org.gradle.api.Project;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.Provider;
+import org.jspecify.annotations.Nullable;
 
 /**
  * Configures Spotless with formatter preferences.
+ *
+ * Optionally only the files changed relative to a git reference are formatted. These are provided by the changed
+ * files service (shared with checkstyle), rather than by Spotless' own ratchet support.
  */
 public class SpotlessConfigurator {
+    /** The gradle project. */
+    private final Project project;
     /** The gradle logger. */
     private final Logger logger;
     /** The formatter configuration. */
     private final FormatterConfiguration formatterConfig;
+    /** The changed files service, or null to format all files. */
+    private final @Nullable Provider<ChangedFilesService> changedFiles;
+    /** The generated source files. */
+    private final FileCollection generatedFiles;
 
     /**
      * Creates new instance.
      *
-     * @param logger          the gradle logger
+     * @param project         the gradle project
      * @param formatterConfig the plugin configuration
+     * @param changedFiles    the changed files service, or null to format all files
+     * @param generatedFiles  the generated source files
      */
-    public SpotlessConfigurator(Logger logger, FormatterConfiguration formatterConfig) {
-        this.logger = logger;
+    public SpotlessConfigurator(
+            Project project,
+            FormatterConfiguration formatterConfig,
+            @Nullable Provider<ChangedFilesService> changedFiles,
+            FileCollection generatedFiles) {
+        this.project = project;
+        this.logger = project.getLogger();
         this.formatterConfig = formatterConfig;
+        this.changedFiles = changedFiles;
+        this.generatedFiles = generatedFiles;
     }
 
     /**
@@ -34,16 +61,59 @@ public class SpotlessConfigurator {
     public void configure(SpotlessExtension se) {
         logger.info("dk.mada.style configure spotless");
 
+        Provider<ChangedFilesService> service = changedFiles;
+        if (service != null) {
+            project.getTasks().withType(SpotlessTask.class).configureEach(t -> t.usesService(service));
+        }
+
         se.java(this::configureJava);
     }
 
+    /**
+     * Predeclares the formatter dependencies in the root project.
+     *
+     * This makes Spotless resolve the formatter dependencies once in the root project, and share them (and the
+     * formatter classloader) with all projects. Without this each project resolves the dependencies separately.
+     *
+     * This is called by the settings plugin when the root project itself is configured, so Spotless is set up in the
+     * root project before any of its subprojects apply it.
+     *
+     * @param logger      the gradle logger
+     * @param rootProject the root project
+     */
+    public static void predeclareDependencies(Logger logger, Project rootProject) {
+        logger.info("dk.mada.style predeclare spotless dependencies in root project");
+
+        rootProject.getPluginManager().apply(SpotlessPlugin.class);
+        rootProject.getExtensions().getByType(SpotlessExtension.class).predeclareDeps();
+        rootProject.getExtensions().configure(SpotlessExtensionPredeclare.class, sp -> sp.java(je -> {
+            // Must match the steps used in configureJava
+            je.palantirJavaFormat();
+            je.formatAnnotations();
+        }));
+    }
+
     private void configureJava(JavaExtension je) {
+        // Note that changes to the steps must also be made in predeclareDependencies
         List<String> include = formatterConfig.includes();
         List<String> exclude = formatterConfig.excludes();
         logger.debug("Spotless java include:{} exclude:{}", include, exclude);
 
-        je.target(include);
-        je.targetExclude(exclude);
+        Provider<ChangedFilesService> service = changedFiles;
+        if (service == null) {
+            je.target(include);
+        } else {
+            FileCollection includedFiles = project.fileTree(project.getProjectDir(), t -> t.include(include));
+            je.target(includedFiles.filter(f -> service.get().isChanged(f)));
+        }
+        if (formatterConfig.excludeGenerated()) {
+            List<Object> allExcludes = new ArrayList<>(exclude);
+            allExcludes.add(generatedFiles);
+            je.targetExclude(allExcludes.toArray());
+            je.targetExcludeIfContentContainsRegex(GeneratedSourceClassifier.GENERATED_ANNOTATION_REGEXP);
+        } else {
+            je.targetExclude(exclude);
+        }
 
         je.palantirJavaFormat();
         je.formatAnnotations(); // Note that this *must* come after the java formatter configuration
@@ -0,0 +1,142 @@
+package dk.mada.style.report;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Plugin;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.Trees;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import javax.tools.Diagnostic;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Javac plugin writing the live heap usage of a compilation to a file.
+ *
+ * This class is loaded by javac from the annotation processor path (not by Gradle), so it must not use any Gradle
+ * types.
+ *
+ * The live heap is the heap used after garbage collection, so garbage does not inflate the measurement. It is sampled
+ * as the compilation progresses, and the largest sample is recorded together with the time spent collecting garbage.
+ *
+ * In forked compilations the JVM runs nothing but the compiler. In-process compilations share the heap with the Gradle
+ * daemon, so the live heap at the start of the compilation is recorded too.
+ */
+public final class CompileHeapPlugin implements Plugin {
+    /** The plugin name used with the -Xplugin option. */
+    public static final String NAME = "MadaCompileHeap";
+    /** The property key used for the live heap usage (in bytes). */
+    public static final String LIVE_HEAP_KEY = "liveHeapBytes";
+    /** The property key used for the live heap usage at the start of the compilation (in bytes). */
+    public static final String START_LIVE_HEAP_KEY = "startLiveHeapBytes";
+    /** The property key used for the maximum heap size of the compiler JVM (in bytes). */
+    public static final String MAX_HEAP_KEY = "maxHeapBytes";
+    /** The property key used for the time spent collecting garbage (in milliseconds). */
+    public static final String GC_TIME_KEY = "gcTimeMs";
+    /** The property key used for the duration of the compilation (in milliseconds). */
+    public static final String COMPILE_TIME_KEY = "compileTimeMs";
+    /** The heap memory pools. */
+    private final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(p -> p.getType() == MemoryType.HEAP && p.isValid())
+            .toList();
+    /** The live heap usage at the start of the compilation (in bytes). */
+    private long startLiveHeap;
+    /** The largest live heap usage sampled (in bytes). */
+    private long liveHeap;
+    /** The last compilation unit seen, used for reporting problems. */
+    private @Nullable CompilationUnitTree lastUnit;
+
+    /** Constructs new instance. */
+    public CompileHeapPlugin() {
+        // Explicit default constructor to avoid javadoc warning
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void init(JavacTask task, String... args) {
+        if (args.length != 1) {
+            throw new IllegalArgumentException(
+                    NAME + " expects the output file as argument, got " + Arrays.toString(args));
+        }
+        Path outputFile = Path.of(URLDecoder.decode(args[0], StandardCharsets.UTF_8));
+        long startGcMs = gcTimeMs();
+        long startMs = System.currentTimeMillis();
+        startLiveHeap = currentLiveHeap();
+
+        task.addTaskListener(new TaskListener() {
+            @Override
+            public void finished(TaskEvent e) {
+                if (e.getCompilationUnit() != null) {
+                    lastUnit = e.getCompilationUnit();
+                }
+                sampleLiveHeap();
+                if (e.getKind() == TaskEvent.Kind.COMPILATION) {
+                    long gcMs = gcTimeMs() - startGcMs;
+                    long compileMs = System.currentTimeMillis() - startMs;
+                    writeLiveHeap(task, outputFile, gcMs, compileMs);
+                }
+            }
+        });
+    }
+
+    private void sampleLiveHeap() {
+        liveHeap = Math.max(liveHeap, currentLiveHeap());
+    }
+
+    private long currentLiveHeap() {
+        return heapPools.stream()
+                .map(MemoryPoolMXBean::getCollectionUsage)
+                .filter(Objects::nonNull)
+                .mapToLong(MemoryUsage::getUsed)
+                .sum();
+    }
+
+    private static long gcTimeMs() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .filter(t -> t > 0)
+                .sum();
+    }
+
+    private void writeLiveHeap(JavacTask task, Path outputFile, long gcMs, long compileMs) {
+        try {
+            Properties measurement = new Properties();
+            measurement.setProperty(LIVE_HEAP_KEY, Long.toString(liveHeap));
+            measurement.setProperty(START_LIVE_HEAP_KEY, Long.toString(startLiveHeap));
+            measurement.setProperty(MAX_HEAP_KEY, Long.toString(Runtime.getRuntime().maxMemory()));
+            measurement.setProperty(GC_TIME_KEY, Long.toString(gcMs));
+            measurement.setProperty(COMPILE_TIME_KEY, Long.toString(compileMs));
+
+            Files.createDirectories(Objects.requireNonNull(outputFile.toAbsolutePath().getParent()));
+            try (Writer w = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+                measurement.store(w, "Compilation heap usage");
+            }
+        } catch (RuntimeException | IOException e) {
+            // Measuring must never break the compilation, so this is only a note
+            CompilationUnitTree unit = lastUnit;
+            if (unit != null) {
+                Trees.instance(task)
+                        .printMessage(
+                                Diagnostic.Kind.NOTE, NAME + ": failed to record heap usage: " + e, unit, unit);
+            }
+        }
+    }
+}
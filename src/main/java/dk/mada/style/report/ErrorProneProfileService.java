@@ -0,0 +1,292 @@
+package dk.mada.style.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.logging.LoggingManager;
+import org.gradle.api.logging.StandardOutputListener;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Build service collecting ErrorProne per-check profiles from all compile tasks.
+ *
+ * The time spent in each check is recorded by the ErrorProneProfilerPlugin running inside javac. The number of
+ * findings for each check is counted from the compiler output. Only findings of the checks profiled in the task are
+ * counted, so other diagnostics in the same format (such as javac lint warnings) are ignored. At the end of the build
+ * the checks are ranked by the time they cost per finding, and written to a JSON report and printed on the console.
+ *
+ * The profile of a task is recorded when the task finish event is received. So failing compilations, which are the
+ * ones with ErrorProne errors, are included.
+ */
+public abstract class ErrorProneProfileService
+        implements BuildService<ErrorProneProfileService.Params>, OperationCompletionListener, AutoCloseable {
+    /** The name the service is registered with. */
+    public static final String SERVICE_NAME = "dk.mada.style.errorprone-profile";
+    /** The gradle logger. */
+    private static final Logger LOGGER = Logging.getLogger(ErrorProneProfileService.class);
+    /** The number of checks shown on the console. */
+    private static final int CONSOLE_TOP_CHECKS = 15;
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MS = 1_000_000L;
+    /**
+     * Pattern matching the check name in ErrorProne diagnostics.
+     *
+     * The diagnostics start a line with the source location, and the check names are in upper camel case (unlike the
+     * javac lint categories, which use the same format).
+     */
+    private static final Pattern FINDING_PATTERN =
+            Pattern.compile("^\\S.*:\\d+: (?:warning|error): \\[([A-Z]\\w*)\\] ", Pattern.MULTILINE);
+    /** The recorded check profiles, indexed by check name. */
+    private final Map<String, CheckProfile> profiles = new TreeMap<>();
+    /** The running compile tasks, indexed by task path. */
+    private final Map<String, ProfiledTask> running = new HashMap<>();
+
+    /**
+     * Parameters for the service.
+     */
+    public interface Params extends BuildServiceParameters {
+        /** {@return the file to write the JSON report to} */
+        RegularFileProperty getReportFile();
+    }
+
+    /**
+     * The profile of a single check.
+     */
+    private static final class CheckProfile {
+        /** The check name. */
+        private final String check;
+        /** The time spent in the check, indexed by project path. */
+        private final Map<String, Long> projectNanos = new TreeMap<>();
+        /** The number of findings from the check. */
+        private long findings;
+
+        private CheckProfile(String check) {
+            this.check = check;
+        }
+
+        private long totalNanos() {
+            return projectNanos.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        private double nanosPerFinding() {
+            return (double) totalNanos() / (findings + 1);
+        }
+    }
+
+    /**
+     * A running compile task, counting the findings in its output.
+     */
+    private static final class ProfiledTask implements StandardOutputListener {
+        /** The project path. */
+        private final String projectPath;
+        /** The file the profiler writes to. */
+        private final Path profileFile;
+        /** The logging of the task. */
+        private final LoggingManager logging;
+        /** The number of findings, indexed by check name. */
+        private final Map<String, Long> findings = new HashMap<>();
+
+        private ProfiledTask(String projectPath, Path profileFile, LoggingManager logging) {
+            this.projectPath = projectPath;
+            this.profileFile = profileFile;
+            this.logging = logging;
+        }
+
+        @Override
+        public void onOutput(CharSequence output) {
+            Matcher m = FINDING_PATTERN.matcher(output);
+            synchronized (findings) {
+                while (m.find()) {
+                    findings.merge(m.group(1), 1L, Long::sum);
+                }
+            }
+        }
+    }
+
+    /** Constructs new instance. */
+    public ErrorProneProfileService() {
+        // Explicit default constructor to avoid javadoc warning
+    }
+
+    /**
+     * Profiles the ErrorProne checks of a compile task.
+     *
+     * Note that the profiler plugin must be active in the task, writing to the profile file. The service must be
+     * registered for task completion events.
+     *
+     * @param jc          the compile task
+     * @param service     the profile service
+     * @param profileFile the file the profiler writes to
+     */
+    public static void track(
+            JavaCompile jc, Provider<ErrorProneProfileService> service, Provider<RegularFile> profileFile) {
+        String taskPath = jc.getPath();
+        jc.usesService(service);
+        jc.doFirst("Count ErrorProne findings", t -> {
+            File file = profileFile.get().getAsFile();
+            // A compilation failing before javac runs must not report the profile of an earlier run
+            file.delete();
+            service.get().start(taskPath, file.toPath(), t.getLogging());
+        });
+    }
+
+    private void start(String taskPath, Path profileFile, LoggingManager logging) {
+        var task = new ProfiledTask(projectOf(taskPath), profileFile, logging);
+        synchronized (this) {
+            running.put(taskPath, task);
+        }
+        logging.addStandardErrorListener(task);
+        logging.addStandardOutputListener(task);
+    }
+
+    @Override
+    public void onFinish(FinishEvent event) {
+        if (!(event instanceof TaskFinishEvent tfe)) {
+            return;
+        }
+        @Nullable ProfiledTask task;
+        synchronized (this) {
+            task = running.remove(tfe.getDescriptor().getTaskPath());
+        }
+        if (task == null) {
+            return;
+        }
+        task.logging.removeStandardErrorListener(task);
+        task.logging.removeStandardOutputListener(task);
+        synchronized (task.findings) {
+            record(task.projectPath, task.profileFile, task.findings);
+        }
+    }
+
+    private static String projectOf(String taskPath) {
+        int nameIndex = taskPath.lastIndexOf(':');
+        return nameIndex <= 0 ? ":" : taskPath.substring(0, nameIndex);
+    }
+
+    /**
+     * Reads a profile written by the ErrorProneProfilerPlugin.
+     *
+     * @param profileFile the profile file
+     * @return the profile, empty if it could not be read
+     */
+    static Properties readProfile(Path profileFile) {
+        Properties profile = new Properties();
+        if (Files.isRegularFile(profileFile)) {
+            try (Reader r = Files.newBufferedReader(profileFile, StandardCharsets.UTF_8)) {
+                profile.load(r);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read ErrorProne profile {}", profileFile, e);
+            }
+        }
+        return profile;
+    }
+
+    private synchronized void record(String projectPath, Path profileFile, Map<String, Long> findings) {
+        Properties profile = readProfile(profileFile);
+        profile.stringPropertyNames().stream()
+                .filter(k -> k.startsWith(ErrorProneProfilerPlugin.CHECK_PREFIX))
+                .forEach(k -> {
+                    String check = k.substring(ErrorProneProfilerPlugin.CHECK_PREFIX.length());
+                    long nanos = Long.parseLong(profile.getProperty(k));
+                    profileOf(check).projectNanos.merge(projectPath, nanos, Long::sum);
+                });
+        findings.forEach((check, count) -> {
+            if (profile.containsKey(ErrorProneProfilerPlugin.CHECK_PREFIX + check)) {
+                profileOf(check).findings += count;
+            }
+        });
+    }
+
+    private CheckProfile profileOf(String check) {
+        return profiles.computeIfAbsent(check, CheckProfile::new);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (profiles.isEmpty()) {
+            return;
+        }
+        List<CheckProfile> ranked = profiles.values().stream()
+                .sorted(Comparator.comparingDouble(CheckProfile::nanosPerFinding)
+                        .reversed()
+                        .thenComparing(cp -> cp.check))
+                .toList();
+        printTable(ranked);
+        writeJson(ranked);
+    }
+
+    private void printTable(List<CheckProfile> ranked) {
+        String format = "%-40s %10s %9s %14s";
+        LOGGER.lifecycle("Mada style ErrorProne checks ranked by cost per finding:");
+        LOGGER.lifecycle(String.format(Locale.ROOT, format, "check", "time(ms)", "findings", "ms/finding"));
+        ranked.stream()
+                .limit(CONSOLE_TOP_CHECKS)
+                .forEach(cp -> LOGGER.lifecycle(String.format(
+                        Locale.ROOT,
+                        format,
+                        cp.check,
+                        cp.totalNanos() / NANOS_PER_MS,
+                        cp.findings,
+                        String.format(Locale.ROOT, "%.1f", cp.nanosPerFinding() / NANOS_PER_MS))));
+    }
+
+    private void writeJson(List<CheckProfile> ranked) {
+        Path reportFile = getParameters().getReportFile().get().getAsFile().toPath();
+        var sb = new StringBuilder();
+        sb.append("{\n  \"checks\": [");
+        String separator = "\n";
+        for (CheckProfile cp : ranked) {
+            sb.append(separator)
+                    .append("    {\"check\": ")
+                    .append(JsonStrings.quote(cp.check))
+                    .append(", \"timeMs\": ")
+                    .append(cp.totalNanos() / NANOS_PER_MS)
+                    .append(", \"findings\": ")
+                    .append(cp.findings)
+                    .append(", \"projectTimeMs\": {");
+            String projectSeparator = "";
+            for (Map.Entry<String, Long> e : cp.projectNanos.entrySet()) {
+                sb.append(projectSeparator)
+                        .append(JsonStrings.quote(e.getKey()))
+                        .append(": ")
+                        .append(e.getValue() / NANOS_PER_MS);
+                projectSeparator = ", ";
+            }
+            sb.append("}}");
+            separator = ",\n";
+        }
+        sb.append("\n  ]\n}\n");
+
+        try {
+            Files.createDirectories(Objects.requireNonNull(reportFile.getParent()));
+            Files.writeString(reportFile, sb.toString(), StandardCharsets.UTF_8);
+            LOGGER.lifecycle("Mada style ErrorProne profile written to {}", reportFile);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write ErrorProne profile to {}", reportFile, e);
+        }
+    }
+}
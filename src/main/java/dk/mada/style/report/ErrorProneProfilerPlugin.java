@@ -0,0 +1,104 @@
+package dk.mada.style.report;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Plugin;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.Trees;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import javax.tools.Diagnostic;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Javac plugin writing the ErrorProne per-check timings of a compilation to a file.
+ *
+ * This class is loaded by javac from the annotation processor path (not by Gradle), so it must not use any Gradle
+ * types. The timings are kept by ErrorProne in the javac context, so they are read via reflection. This relies on the
+ * javac internals being exported, which ErrorProne already requires.
+ */
+public final class ErrorProneProfilerPlugin implements Plugin {
+    /** The plugin name used with the -Xplugin option. */
+    public static final String NAME = "MadaErrorProneProfiler";
+    /** The property key prefix used for check timings (in nanoseconds). */
+    public static final String CHECK_PREFIX = "check.";
+    /** The property key used for the ErrorProne initialization time (in nanoseconds). */
+    public static final String INITIALIZATION_KEY = "initialization";
+    /** The ErrorProne class keeping the timings. */
+    private static final String ERROR_PRONE_TIMINGS_CLASS = "com.google.errorprone.ErrorProneTimings";
+    /** The last compilation unit seen, used for reporting problems. */
+    private @Nullable CompilationUnitTree lastUnit;
+
+    /** Constructs new instance. */
+    public ErrorProneProfilerPlugin() {
+        // Explicit default constructor to avoid javadoc warning
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void init(JavacTask task, String... args) {
+        if (args.length != 1) {
+            throw new IllegalArgumentException(
+                    NAME + " expects the output file as argument, got " + Arrays.toString(args));
+        }
+        Path outputFile = Path.of(URLDecoder.decode(args[0], StandardCharsets.UTF_8));
+        task.addTaskListener(new TaskListener() {
+            @Override
+            public void finished(TaskEvent e) {
+                if (e.getCompilationUnit() != null) {
+                    lastUnit = e.getCompilationUnit();
+                }
+                if (e.getKind() == TaskEvent.Kind.COMPILATION) {
+                    writeTimings(task, outputFile);
+                }
+            }
+        });
+    }
+
+    private void writeTimings(JavacTask task, Path outputFile) {
+        try {
+            Object context = task.getClass().getMethod("getContext").invoke(task);
+            Class<?> timingsClass = Class.forName(ERROR_PRONE_TIMINGS_CLASS, false, getClass().getClassLoader());
+            Method instanceMethod = Arrays.stream(timingsClass.getMethods())
+                    .filter(m -> "instance".equals(m.getName()) && m.getParameterCount() == 1)
+                    .findFirst()
+                    .orElseThrow(() -> new NoSuchMethodException(ERROR_PRONE_TIMINGS_CLASS + ".instance"));
+            Object timings = instanceMethod.invoke(null, context);
+
+            Properties profile = new Properties();
+            Map<?, ?> checkTimings = (Map<?, ?>) timingsClass.getMethod("timings").invoke(timings);
+            checkTimings.forEach((check, duration) ->
+                    profile.setProperty(CHECK_PREFIX + check, Long.toString(((Duration) duration).toNanos())));
+            Duration initialization = (Duration) timingsClass.getMethod("initializationTime").invoke(timings);
+            profile.setProperty(INITIALIZATION_KEY, Long.toString(initialization.toNanos()));
+
+            Files.createDirectories(Objects.requireNonNull(outputFile.toAbsolutePath().getParent()));
+            try (Writer w = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+                profile.store(w, "ErrorProne check timings");
+            }
+        } catch (ReflectiveOperationException | RuntimeException | IOException e) {
+            // Profiling must never break the compilation, so this is only a note
+            CompilationUnitTree unit = lastUnit;
+            if (unit != null) {
+                Trees.instance(task)
+                        .printMessage(
+                                Diagnostic.Kind.NOTE, NAME + ": failed to record ErrorProne timings: " + e, unit, unit);
+            }
+        }
+    }
+}
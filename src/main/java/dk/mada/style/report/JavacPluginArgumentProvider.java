@@ -0,0 +1,53 @@
+package dk.mada.style.report;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.process.CommandLineArgumentProvider;
+
+/**
+ * Provides the javac arguments activating one of the measuring javac plugins.
+ *
+ * The file the plugin writes to is declared as an output of the compile task. It is only resolved when the task runs.
+ */
+public final class JavacPluginArgumentProvider implements CommandLineArgumentProvider {
+    /** The javac plugin name. */
+    private final String pluginName;
+    /** The file the plugin writes to. */
+    private final Provider<RegularFile> outputFile;
+
+    /**
+     * Creates new instance.
+     *
+     * @param pluginName the javac plugin name
+     * @param outputFile the file the plugin writes to
+     */
+    public JavacPluginArgumentProvider(String pluginName, Provider<RegularFile> outputFile) {
+        this.pluginName = pluginName;
+        this.outputFile = outputFile;
+    }
+
+    /** {@return the javac plugin name} */
+    @Input
+    public String getPluginName() {
+        return pluginName;
+    }
+
+    /** {@return the file the plugin writes to} */
+    @OutputFile
+    public Provider<RegularFile> getOutputFile() {
+        return outputFile;
+    }
+
+    @Override
+    public Iterable<String> asArguments() {
+        // The plugin arguments are separated by spaces, so the path is encoded
+        String encodedPath =
+                URLEncoder.encode(outputFile.get().getAsFile().getAbsolutePath(), StandardCharsets.UTF_8);
+        return List.of("-Xplugin:" + pluginName + " " + encodedPath);
+    }
+}
@@ -0,0 +1,156 @@
+package dk.mada.style.report;
+
+import com.sun.source.util.Plugin;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Provides a minimal jar with the measuring javac plugins.
+ *
+ * The javac plugins are loaded from the annotation processor path, along with ErrorProne. So rather than putting the
+ * entire Gradle plugin jar there, a jar with just the javac plugin classes and their service registration is made
+ * from the class files of this plugin.
+ *
+ * The jar is stored named by a checksum of its content, so it is only written once for each version of the plugin.
+ */
+public final class JavacPluginsJar {
+    /** The javac plugins in the jar. */
+    private static final List<Class<? extends Plugin>> PLUGINS =
+            List.of(CompileHeapPlugin.class, ErrorProneProfilerPlugin.class);
+    /** The name of the jar file. */
+    private static final String JAR_NAME = "mada-javac-plugins.jar";
+    /** The jar entry registering the javac plugins. */
+    private static final String SERVICES_ENTRY = "META-INF/services/" + Plugin.class.getName();
+    /** The jars provided, indexed by storage directory. */
+    private static final Map<Path, Path> JARS = new ConcurrentHashMap<>();
+
+    private JavacPluginsJar() {
+        // empty
+    }
+
+    /**
+     * Provides the javac plugins jar, writing it if needed.
+     *
+     * @param storageDir the directory to store the jar in
+     * @return the jar file
+     */
+    public static File locate(Path storageDir) {
+        return JARS.computeIfAbsent(storageDir, JavacPluginsJar::provide).toFile();
+    }
+
+    private static Path provide(Path storageDir) {
+        try {
+            Map<String, byte[]> entries = readPluginEntries();
+            Path jarFile = storageDir.resolve(checksum(entries)).resolve(JAR_NAME);
+            if (Files.isRegularFile(jarFile)) {
+                return jarFile;
+            }
+
+            Path jarDir = Objects.requireNonNull(jarFile.getParent());
+            Files.createDirectories(jarDir);
+            Path tempFile = Files.createTempFile(jarDir, JAR_NAME, ".tmp");
+            try {
+                try (OutputStream os = Files.newOutputStream(tempFile);
+                        JarOutputStream jos = new JarOutputStream(os)) {
+                    for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                        jos.putNextEntry(new JarEntry(e.getKey()));
+                        jos.write(e.getValue());
+                        jos.closeEntry();
+                    }
+                }
+                Files.move(tempFile, jarFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            return jarFile;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to provide the javac plugins jar in " + storageDir, e);
+        }
+    }
+
+    /**
+     * Reads the class files of the javac plugins (including their nested classes) and makes their service
+     * registration.
+     *
+     * @return the jar entries, indexed by name
+     * @throws IOException if the class files cannot be read
+     */
+    private static Map<String, byte[]> readPluginEntries() throws IOException {
+        Map<String, byte[]> entries = new TreeMap<>();
+        Path codeSource = codeSource();
+        if (Files.isDirectory(codeSource)) {
+            for (Class<? extends Plugin> plugin : PLUGINS) {
+                Path packageDir = codeSource.resolve(plugin.getPackageName().replace('.', '/'));
+                try (Stream<Path> files = Files.list(packageDir)) {
+                    for (Path f : files.toList()) {
+                        String entryName = codeSource.relativize(f).toString().replace('\\', '/');
+                        if (isPluginClass(entryName)) {
+                            entries.put(entryName, Files.readAllBytes(f));
+                        }
+                    }
+                }
+            }
+        } else {
+            try (JarFile jar = new JarFile(codeSource.toFile())) {
+                for (JarEntry e : jar.stream().filter(e -> isPluginClass(e.getName())).toList()) {
+                    entries.put(e.getName(), jar.getInputStream(e).readAllBytes());
+                }
+            }
+        }
+
+        String services = PLUGINS.stream().map(Class::getName).collect(Collectors.joining("\n", "", "\n"));
+        entries.put(SERVICES_ENTRY, services.getBytes(StandardCharsets.UTF_8));
+        return entries;
+    }
+
+    private static boolean isPluginClass(String entryName) {
+        return PLUGINS.stream()
+                .map(p -> p.getName().replace('.', '/'))
+                .anyMatch(classPath -> entryName.equals(classPath + ".class")
+                        || (entryName.startsWith(classPath + "$") && entryName.endsWith(".class")));
+    }
+
+    private static Path codeSource() {
+        try {
+            return Path.of(JavacPluginsJar.class
+                            .getProtectionDomain()
+                            .getCodeSource()
+                            .getLocation()
+                            .toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Failed to locate the javac plugin classes", e);
+        }
+    }
+
+    private static String checksum(Map<String, byte[]> entries) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            entries.forEach((name, content) -> {
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                digest.update(content);
+            });
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to make checksum", e);
+        }
+    }
+}
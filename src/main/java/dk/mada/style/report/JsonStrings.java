@@ -0,0 +1,41 @@
+package dk.mada.style.report;
+
+import java.util.Locale;
+
+/**
+ * Formats JSON string values for the hand-written JSON reports.
+ */
+public final class JsonStrings {
+    private JsonStrings() {
+        // empty
+    }
+
+    /**
+     * Quotes a text as a JSON string value.
+     *
+     * Quotes, backslashes and control characters are escaped.
+     *
+     * @param text the text to quote
+     * @return the JSON string value, including the quotes
+     */
+    public static String quote(String text) {
+        var sb = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < ' ') {
+                        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,269 @@
+package dk.mada.style.report;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import org.gradle.api.Task;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskOperationResult;
+import org.gradle.tooling.events.task.TaskSkippedResult;
+import org.gradle.tooling.events.task.TaskSuccessResult;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Build service recording the time spent by the style tools.
+ *
+ * The wall time of each task is recorded via task completion events, and the number of files processed is recorded
+ * when a task starts. At the end of the build a JSON summary is written, and a table is printed on the console.
+ *
+ * For tasks running ErrorProne, its share of the compile time is estimated from ErrorProne's own timings (of the
+ * checks and their initialization), as recorded by the ErrorProneProfilerPlugin. The remainder is the time of a plain
+ * (baseline) compilation.
+ */
+public abstract class ToolTimingService
+        implements BuildService<ToolTimingService.Params>, OperationCompletionListener, AutoCloseable {
+    /** The name the service is registered with. */
+    public static final String SERVICE_NAME = "dk.mada.style.tool-timing";
+    /** The gradle logger. */
+    private static final Logger LOGGER = Logging.getLogger(ToolTimingService.class);
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MS = 1_000_000L;
+    /** The recorded timings, indexed by project path and tool. */
+    private final Map<String, ToolTiming> timings = new TreeMap<>();
+
+    /**
+     * Parameters for the service.
+     */
+    public interface Params extends BuildServiceParameters {
+        /** {@return the file to write the JSON summary to} */
+        RegularFileProperty getReportFile();
+    }
+
+    /**
+     * The timing of a tool in a project.
+     */
+    private static final class ToolTiming {
+        /** The project path. */
+        private final String project;
+        /** The tool name. */
+        private final String tool;
+        /** The number of tasks completed. */
+        private int tasks;
+        /** The number of tasks executed (not up-to-date, from cache or skipped). */
+        private int executed;
+        /** The accumulated wall time in milliseconds. */
+        private long wallTimeMs;
+        /** The accumulated number of files processed. */
+        private long files;
+        /** The accumulated time spent in ErrorProne in nanoseconds. */
+        private long errorProneNanos;
+
+        private ToolTiming(String project, String tool) {
+            this.project = project;
+            this.tool = tool;
+        }
+    }
+
+    /** Constructs new instance. */
+    public ToolTimingService() {
+        // Explicit default constructor to avoid javadoc warning
+    }
+
+    /**
+     * Tracks the files processed by a task, if it belongs to one of the style tools.
+     *
+     * @param task    the task to track
+     * @param service the timing service
+     */
+    public static void track(Task task, Provider<ToolTimingService> service) {
+        String tool = toolOf(task.getName());
+        if (tool == null) {
+            return;
+        }
+        String taskPath = task.getPath();
+        task.usesService(service);
+        task.doFirst("Record mada style tool files", t -> service.get()
+                .recordFiles(taskPath, tool, t.getInputs().getSourceFiles().getFiles().size()));
+    }
+
+    /**
+     * Tracks the time spent in ErrorProne by a compile task.
+     *
+     * Note that the profiler plugin must be active in the task, writing to the profile file.
+     *
+     * @param jc          the compile task
+     * @param service     the timing service
+     * @param profileFile the file the profiler writes to
+     */
+    public static void trackErrorProne(
+            JavaCompile jc, Provider<ToolTimingService> service, Provider<RegularFile> profileFile) {
+        String tool = toolOf(jc.getName());
+        if (tool == null) {
+            return;
+        }
+        String taskPath = jc.getPath();
+        jc.usesService(service);
+        jc.doLast("Record ErrorProne share of compile time", _ -> {
+            Properties profile = ErrorProneProfileService.readProfile(
+                    profileFile.get().getAsFile().toPath());
+            long nanos = profile.stringPropertyNames().stream()
+                    .filter(k -> k.startsWith(ErrorProneProfilerPlugin.CHECK_PREFIX)
+                            || k.equals(ErrorProneProfilerPlugin.INITIALIZATION_KEY))
+                    .mapToLong(k -> Long.parseLong(profile.getProperty(k)))
+                    .sum();
+            service.get().recordErrorProne(taskPath, tool, nanos);
+        });
+    }
+
+    /**
+     * Finds the style tool a task belongs to.
+     *
+     * @param taskName the task name
+     * @return the tool name, or null if the task does not belong to a style tool
+     */
+    static @Nullable String toolOf(String taskName) {
+        if (taskName.startsWith("checkstyle")) {
+            return "checkstyle";
+        } else if (taskName.startsWith("spotless")) {
+            return "spotless";
+        } else if (taskName.startsWith("sonar")) {
+            return "sonar";
+        } else if (taskName.startsWith("compile") && taskName.endsWith("Java")) {
+            return "javac";
+        } else if (taskName.startsWith("errorprone")) {
+            return "errorprone";
+        }
+        return null;
+    }
+
+    @Override
+    public void onFinish(FinishEvent event) {
+        if (!(event instanceof TaskFinishEvent tfe)) {
+            return;
+        }
+        String taskPath = tfe.getDescriptor().getTaskPath();
+        int nameIndex = taskPath.lastIndexOf(':');
+        String tool = toolOf(taskPath.substring(nameIndex + 1));
+        if (tool == null) {
+            return;
+        }
+
+        TaskOperationResult result = tfe.getResult();
+        boolean executed = !(result instanceof TaskSkippedResult)
+                && !(result instanceof TaskSuccessResult tsr && (tsr.isUpToDate() || tsr.isFromCache()));
+        synchronized (this) {
+            ToolTiming timing = timingOf(taskPath, tool);
+            timing.tasks++;
+            if (executed) {
+                timing.executed++;
+            }
+            timing.wallTimeMs += result.getEndTime() - result.getStartTime();
+        }
+    }
+
+    private synchronized void recordFiles(String taskPath, String tool, int files) {
+        timingOf(taskPath, tool).files += files;
+    }
+
+    private synchronized void recordErrorProne(String taskPath, String tool, long nanos) {
+        timingOf(taskPath, tool).errorProneNanos += nanos;
+    }
+
+    private ToolTiming timingOf(String taskPath, String tool) {
+        int nameIndex = taskPath.lastIndexOf(':');
+        String project = nameIndex <= 0 ? ":" : taskPath.substring(0, nameIndex);
+        return timings.computeIfAbsent(project + " " + tool, _ -> new ToolTiming(project, tool));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (timings.isEmpty()) {
+            return;
+        }
+        List<ToolTiming> recorded = new ArrayList<>(timings.values());
+        printTable(recorded);
+        writeJson(recorded);
+    }
+
+    private void printTable(List<ToolTiming> recorded) {
+        String format = "%-40s %-12s %6s %9s %8s %10s %16s";
+        LOGGER.lifecycle("Mada style tool timings:");
+        LOGGER.lifecycle(String.format(
+                Locale.ROOT, format, "project", "tool", "tasks", "executed", "files", "time(ms)", "errorprone(ms)"));
+        for (ToolTiming t : recorded) {
+            String errorProne = t.errorProneNanos == 0
+                    ? "-"
+                    : String.format(Locale.ROOT, "%d (%d%%)", t.errorProneNanos / NANOS_PER_MS, errorProneShare(t));
+            LOGGER.lifecycle(String.format(
+                    Locale.ROOT, format, t.project, t.tool, t.tasks, t.executed, t.files, t.wallTimeMs, errorProne));
+        }
+    }
+
+    private void writeJson(List<ToolTiming> recorded) {
+        Path reportFile = getParameters().getReportFile().get().getAsFile().toPath();
+        var sb = new StringBuilder();
+        sb.append("{\n  \"timings\": [");
+        String separator = "\n";
+        for (ToolTiming t : recorded) {
+            sb.append(separator)
+                    .append("    {\"project\": ")
+                    .append(JsonStrings.quote(t.project))
+                    .append(", \"tool\": ")
+                    .append(JsonStrings.quote(t.tool))
+                    .append(", \"tasks\": ")
+                    .append(t.tasks)
+                    .append(", \"executed\": ")
+                    .append(t.executed)
+                    .append(", \"files\": ")
+                    .append(t.files)
+                    .append(", \"wallTimeMs\": ")
+                    .append(t.wallTimeMs)
+                    .append(", \"errorProneMs\": ")
+                    .append(t.errorProneNanos / NANOS_PER_MS)
+                    .append(", \"errorProneSharePercent\": ")
+                    .append(errorProneShare(t))
+                    .append('}');
+            separator = ",\n";
+        }
+        sb.append("\n  ]\n}\n");
+
+        try {
+            Files.createDirectories(Objects.requireNonNull(reportFile.getParent()));
+            Files.writeString(reportFile, sb.toString(), StandardCharsets.UTF_8);
+            LOGGER.lifecycle("Mada style tool timings written to {}", reportFile);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write tool timings to {}", reportFile, e);
+        }
+    }
+
+    /**
+     * Estimates the share of the wall time spent in ErrorProne.
+     *
+     * @param t the tool timing
+     * @return the estimated share in percent
+     */
+    private static long errorProneShare(ToolTiming t) {
+        if (t.wallTimeMs == 0) {
+            return 0;
+        }
+        return Math.min(100, t.errorProneNanos / NANOS_PER_MS * 100 / t.wallTimeMs);
+    }
+}
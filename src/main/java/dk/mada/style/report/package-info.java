@@ -0,0 +1,4 @@
+/**
+ * Reporting of the cost of the style tools in the build.
+ */
+package dk.mada.style.report;
@@ -0,0 +1,129 @@
+package dk.mada.style.tasks;
+
+import dk.mada.style.report.JsonStrings;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Renders SARIF reports from a checkstyle XML report.
+ *
+ * This is used for merged shard reports, where there is no single checkstyle run to write the report.
+ */
+final class CheckstyleReportRenderer {
+    /** The SARIF schema location. */
+    private static final String SARIF_SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+
+    private CheckstyleReportRenderer() {
+        // empty
+    }
+
+    /**
+     * A checkstyle violation.
+     *
+     * @param line     the line number, or 0 if unknown
+     * @param column   the column number, or 0 if unknown
+     * @param severity the checkstyle severity
+     * @param message  the violation message
+     * @param source   the name of the check reporting the violation
+     */
+    record Violation(int line, int column, String severity, String message, String source) {}
+
+    /**
+     * The violations of a file.
+     *
+     * @param fileName   the absolute file name
+     * @param violations the violations in the file
+     */
+    record FileViolations(String fileName, List<Violation> violations) {}
+
+    /**
+     * Extracts the violations from a checkstyle XML report.
+     *
+     * @param report the XML report
+     * @return the violations, grouped by file
+     */
+    static List<FileViolations> violations(Document report) {
+        List<FileViolations> result = new ArrayList<>();
+        NodeList files = report.getElementsByTagName("file");
+        for (int i = 0; i < files.getLength(); i++) {
+            Element file = (Element) files.item(i);
+            List<Violation> violations = new ArrayList<>();
+            NodeList errors = file.getElementsByTagName("error");
+            for (int j = 0; j < errors.getLength(); j++) {
+                Element error = (Element) errors.item(j);
+                violations.add(new Violation(
+                        toInt(error.getAttribute("line")),
+                        toInt(error.getAttribute("column")),
+                        error.getAttribute("severity"),
+                        error.getAttribute("message"),
+                        error.getAttribute("source")));
+            }
+            result.add(new FileViolations(file.getAttribute("name"), violations));
+        }
+        return result;
+    }
+
+    /**
+     * Renders a SARIF report.
+     *
+     * @param version the checkstyle version
+     * @param files   the violations, grouped by file
+     * @return the SARIF report
+     */
+    static String toSarif(String version, List<FileViolations> files) {
+        var sb = new StringBuilder();
+        sb.append("{\n  \"version\": \"2.1.0\",\n  \"$schema\": ")
+                .append(JsonStrings.quote(SARIF_SCHEMA))
+                .append(",\n  \"runs\": [{\n    \"tool\": {\"driver\": {\"name\": \"Checkstyle\", \"version\": ")
+                .append(JsonStrings.quote(version))
+                .append(", \"informationUri\": \"https://checkstyle.org/\"}},\n    \"results\": [");
+        String separator = "\n";
+        for (FileViolations file : files) {
+            String uri = new File(file.fileName()).toURI().toString();
+            for (Violation v : file.violations()) {
+                sb.append(separator)
+                        .append("      {\"level\": ")
+                        .append(JsonStrings.quote(toSarifLevel(v.severity())))
+                        .append(", \"ruleId\": ")
+                        .append(JsonStrings.quote(v.source()))
+                        .append(", \"message\": {\"text\": ")
+                        .append(JsonStrings.quote(v.message()))
+                        .append("}, \"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": ")
+                        .append(JsonStrings.quote(uri))
+                        .append('}');
+                if (v.line() > 0) {
+                    sb.append(", \"region\": {\"startLine\": ").append(v.line());
+                    if (v.column() > 0) {
+                        sb.append(", \"startColumn\": ").append(v.column());
+                    }
+                    sb.append('}');
+                }
+                sb.append("}}]}");
+                separator = ",\n";
+            }
+        }
+        return sb.append("\n    ]\n  }]\n}\n").toString();
+    }
+
+    private static String toSarifLevel(String severity) {
+        return switch (severity.toLowerCase(Locale.ROOT)) {
+            case "error" -> "error";
+            case "warning" -> "warning";
+            case "info" -> "note";
+            default -> "none";
+        };
+    }
+
+    private static int toInt(String value) {
+        try {
+            return value.isEmpty() ? 0 : Integer.parseInt(value);
+        } catch (NumberFormatException _) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package dk.mada.style.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.plugins.quality.Checkstyle;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.util.GradleVersion;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Merges the XML reports of sharded checkstyle tasks into a single report.
+ *
+ * The HTML and SARIF reports are rendered from the merged result, so the shards only need to write XML reports. The
+ * HTML report is rendered like the checkstyle task does, applying its stylesheet (or the default stylesheet of the
+ * Gradle checkstyle plugin) to the XML report.
+ *
+ * The failure evaluation is done on the merged result, so it matches that of a single checkstyle task.
+ */
+public abstract class MergeCheckstyleReports extends DefaultTask {
+    /** The stylesheet used by the Gradle checkstyle plugin for HTML reports, unless configured otherwise. */
+    private static final String DEFAULT_STYLESHEET = "checkstyle-noframes-sorted.xsl";
+
+    /** Constructs new instance. */
+    public MergeCheckstyleReports() {
+        // Explicit default constructor to avoid javadoc warning
+    }
+
+    /** {@return the XML reports of the shards} */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract ConfigurableFileCollection getShardReports();
+
+    /** {@return the merged XML report} */
+    @OutputFile
+    public abstract RegularFileProperty getMergedReport();
+
+    /** {@return the merged HTML report, if wanted} */
+    @OutputFile
+    @Optional
+    public abstract RegularFileProperty getMergedHtmlReport();
+
+    /** {@return the merged SARIF report, if wanted} */
+    @OutputFile
+    @Optional
+    public abstract RegularFileProperty getMergedSarifReport();
+
+    /** {@return the stylesheet used to render the HTML report, if not the default} */
+    @Input
+    @Optional
+    public abstract Property<String> getHtmlStylesheet();
+
+    /** {@return flag to ignore violations} */
+    @Input
+    public abstract Property<Boolean> getIgnoreFailures();
+
+    /** {@return the maximal number of errors tolerated} */
+    @Input
+    public abstract Property<Integer> getMaxErrors();
+
+    /** {@return the maximal number of warnings tolerated} */
+    @Input
+    public abstract Property<Integer> getMaxWarnings();
+
+    /**
+     * Merges the shard reports.
+     */
+    @TaskAction
+    public void merge() {
+        File mergedFile = getMergedReport().get().getAsFile();
+        try {
+            DocumentBuilder builder = newDocumentBuilder();
+            Document merged = builder.newDocument();
+            Element mergedRoot = merged.createElement("checkstyle");
+            merged.appendChild(mergedRoot);
+
+            List<File> reports = getShardReports().getFiles().stream()
+                    .filter(File::isFile)
+                    .sorted()
+                    .toList();
+            for (File report : reports) {
+                Element root = builder.parse(report).getDocumentElement();
+                if (!mergedRoot.hasAttribute("version")) {
+                    mergedRoot.setAttribute("version", root.getAttribute("version"));
+                }
+                NodeList children = root.getChildNodes();
+                for (int i = 0; i < children.getLength(); i++) {
+                    Node child = children.item(i);
+                    if (child.getNodeType() == Node.ELEMENT_NODE) {
+                        mergedRoot.appendChild(merged.importNode(child, true));
+                    }
+                }
+            }
+
+            write(merged, mergedFile);
+            if (getMergedHtmlReport().isPresent()) {
+                renderHtml(mergedFile, getMergedHtmlReport().get().getAsFile());
+            }
+            if (getMergedSarifReport().isPresent()) {
+                File sarifFile = getMergedSarifReport().get().getAsFile();
+                String version = mergedRoot.getAttribute("version");
+                Files.writeString(
+                        sarifFile.toPath(),
+                        CheckstyleReportRenderer.toSarif(version, CheckstyleReportRenderer.violations(merged)));
+            }
+            evaluateViolations(merged, mergedFile);
+        } catch (IOException | SAXException | ParserConfigurationException | TransformerException e) {
+            throw new GradleException("Failed to merge checkstyle reports into " + mergedFile, e);
+        }
+    }
+
+    /**
+     * Renders the HTML report from the XML report, like the checkstyle task.
+     *
+     * @param xmlFile  the XML report
+     * @param htmlFile the HTML report
+     * @throws IOException          if the default stylesheet cannot be read
+     * @throws TransformerException if the stylesheet cannot be applied
+     */
+    private void renderHtml(File xmlFile, File htmlFile) throws IOException, TransformerException {
+        String stylesheet = getHtmlStylesheet().getOrNull();
+        if (stylesheet == null) {
+            try (InputStream is = Checkstyle.class.getClassLoader().getResourceAsStream(DEFAULT_STYLESHEET)) {
+                if (is == null) {
+                    throw new IOException("Failed to find " + DEFAULT_STYLESHEET);
+                }
+                stylesheet = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        TransformerFactory factory = TransformerFactory.newInstance();
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        Transformer transformer = factory.newTransformer(new StreamSource(new StringReader(stylesheet)));
+        transformer.setParameter("gradleVersion", GradleVersion.current().toString());
+        transformer.transform(new StreamSource(xmlFile), new StreamResult(htmlFile));
+    }
+
+    private void evaluateViolations(Document merged, File mergedFile) {
+        int errors = 0;
+        int warnings = 0;
+        NodeList violations = merged.getElementsByTagName("error");
+        for (int i = 0; i < violations.getLength(); i++) {
+            String severity = ((Element) violations.item(i)).getAttribute("severity");
+            if ("error".equals(severity)) {
+                errors++;
+            } else if ("warning".equals(severity)) {
+                warnings++;
+            }
+        }
+        getLogger().info("Merged checkstyle reports with {} errors and {} warnings", errors, warnings);
+
+        if (getIgnoreFailures().get()) {
+            return;
+        }
+        if (errors > getMaxErrors().get() || warnings > getMaxWarnings().get()) {
+            throw new GradleException("Checkstyle rule violations were found. See the report at: "
+                    + mergedFile.toURI() + "\nCheckstyle files with violations: " + errors + " errors and "
+                    + warnings + " warnings");
+        }
+    }
+
+    private static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        return factory.newDocumentBuilder();
+    }
+
+    private static void write(Document document, File target) throws TransformerException {
+        TransformerFactory factory = TransformerFactory.newInstance();
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+        Transformer transformer = factory.newTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.transform(new DOMSource(document), new StreamResult(target));
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Tasks added by the plugin.
+ */
+package dk.mada.style.tasks;
@@ -0,0 +1,125 @@
+package dk.mada.style.accept.perf;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dk.mada.style.fixture.TestBuilds;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Measures how sharded checkstyle scales with the number of cores.
+ *
+ * A generated build with many classes is checked with 1, 2, 4, ... shards (up to the number of available cores),
+ * each run limited to the same number of Gradle workers. The median wall time of the checkstyle tasks is written to
+ * a JSON file, so the scaling can be compared between machines.
+ *
+ * The build resolves checkstyle from Maven Central, so this needs network access.
+ */
+class CheckstyleShardScalingPerfTest {
+    /** The number of classes in the generated build. */
+    private static final int CLASSES = Integer.getInteger("perf.shard-classes", 2000);
+    /** The number of measured runs for each shard count. */
+    private static final int ITERATIONS = Integer.getInteger("perf.iterations", 5);
+    /** The number of warm-up runs for each shard count. */
+    private static final int WARMUP_RUNS = 1;
+
+    /** The directory the build is generated in. */
+    @TempDir
+    private Path workDir;
+
+    @Test
+    void shardedCheckstyleScalesWithCores() throws IOException {
+        TestBuilds.writeSingleModuleBuild(
+                workDir,
+                CLASSES,
+                Map.of(
+                        "org.gradle.jvmargs", "-Xmx2g",
+                        "dk.mada.style.errorprone.enabled", "false",
+                        "dk.mada.style.null-checker.enabled", "false",
+                        "dk.mada.style.formatter.enabled", "false",
+                        "dk.mada.style.sonar.enabled", "false"));
+        GradleRunner runner = GradleRunner.create().withProjectDir(workDir.toFile()).withPluginClasspath();
+        run(runner, List.of("compileJava"));
+
+        Map<Integer, Long> results = new LinkedHashMap<>();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int shards = 1; shards <= cores; shards *= 2) {
+            results.put(shards, measure(runner, shards));
+        }
+
+        Path resultsFile = Path.of(
+                System.getProperty("perf.shard-results", "build/reports/perf/checkstyle-shards.json"));
+        TestBuilds.write(resultsFile, toJson(cores, results));
+        System.out.println("Checkstyle shard scaling on " + cores + " cores: " + results);
+    }
+
+    private long measure(GradleRunner runner, int shards) throws IOException {
+        List<String> args = List.of(
+                "checkstyleMain",
+                "--no-build-cache",
+                "--max-workers=" + shards,
+                "-Pdk.mada.style.checkstyle.parallelism=" + shards);
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            cleanCheckstyleOutputs();
+            run(runner, args);
+        }
+
+        long[] wallMs = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            cleanCheckstyleOutputs();
+            wallMs[i] = run(runner, args);
+        }
+        Arrays.sort(wallMs);
+        return wallMs[wallMs.length / 2];
+    }
+
+    /**
+     * Deletes the checkstyle reports and audit caches, so the next run checks all files again.
+     *
+     * @throws IOException if the files cannot be deleted
+     */
+    private void cleanCheckstyleOutputs() throws IOException {
+        deleteRecursively(workDir.resolve("build/reports/checkstyle"));
+        deleteRecursively(workDir.resolve("build/mada-style/checkstyle-cache"));
+    }
+
+    private static long run(GradleRunner runner, List<String> args) {
+        List<String> allArgs = new ArrayList<>(args);
+        allArgs.add("--stacktrace");
+        long start = System.nanoTime();
+        BuildResult result = runner.withArguments(allArgs).build();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(result.getOutput().contains("BUILD SUCCESSFUL"), result.getOutput());
+        return elapsedMs;
+    }
+
+    private static String toJson(int cores, Map<Integer, Long> results) {
+        var sb = new StringBuilder("{\n  \"cores\": ").append(cores).append(",\n  \"classes\": ").append(CLASSES);
+        results.forEach((shards, ms) ->
+                sb.append(",\n  \"shards-").append(shards).append("\": {\"wallMs\": ").append(ms).append('}'));
+        return sb.append("\n}\n").toString();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path f : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(f);
+            }
+        }
+    }
+}
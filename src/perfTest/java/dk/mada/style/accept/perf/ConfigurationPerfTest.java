@@ -0,0 +1,224 @@
+package dk.mada.style.accept.perf;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import dk.mada.style.fixture.TestBuilds;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Measures the configuration cost of the plugin in generated builds with 1, 50 and 500 modules.
+ *
+ * The builds are run in a warm TestKit daemon, measuring the wall time of:
+ * - configuration without the configuration cache
+ * - configuration storing a configuration cache entry (the store time is the difference to the above)
+ * - loading the configuration cache entry
+ *
+ * The number of realized tasks is counted in a separate run, using the same init script as the task realization test.
+ *
+ * The median of a number of runs is written to a JSON file, and compared with a checked-in baseline. The test fails
+ * if a time exceeds the baseline by more than the threshold, if more tasks are realized than in the baseline, or if
+ * there is no baseline.
+ *
+ * ErrorProne and NullAway are disabled, as resolving their dependencies when calculating the task graph would need
+ * network access.
+ */
+class ConfigurationPerfTest {
+    /** The module counts of the generated builds. */
+    private static final List<Integer> MODULE_COUNTS = List.of(1, 50, 500);
+    /** The number of measured runs of each build. */
+    private static final int ITERATIONS = Integer.getInteger("perf.iterations", 5);
+    /** The allowed slowdown relative to the baseline (in percent). */
+    private static final long THRESHOLD_PERCENT = Long.getLong("perf.threshold-percent", 25);
+    /** The number of warm-up runs of each build. */
+    private static final int WARMUP_RUNS = 2;
+    /** Regressions smaller than this are considered noise (in milliseconds). */
+    private static final long NOISE_FLOOR_MS = 50;
+    /** Pattern matching a measurement in the JSON files. */
+    private static final Pattern MEASUREMENT_PATTERN = Pattern.compile(
+            "\"modules-(\\d+)\": \\{\"configurationMs\": (\\d+), \"storeMs\": (\\d+), \"loadMs\": (\\d+),"
+                    + " \"realizedTasks\": (\\d+)\\}");
+    /** The build arguments. */
+    private static final List<String> BUILD_ARGS = List.of("assemble", "--dry-run", "--stacktrace");
+
+    /** The directory the builds are generated in. */
+    @TempDir
+    private Path workDir;
+
+    /**
+     * The configuration measurements of a build.
+     *
+     * @param configurationMs the configuration time without the configuration cache
+     * @param storeMs         the time spent storing the configuration cache entry
+     * @param loadMs          the time spent loading the configuration cache entry
+     * @param realizedTasks   the number of tasks realized when configuring without the configuration cache
+     */
+    record Measurement(long configurationMs, long storeMs, long loadMs, int realizedTasks) {}
+
+    @Test
+    void configurationTimeIsWithinBaseline() throws IOException {
+        Map<Integer, Measurement> results = new LinkedHashMap<>();
+        for (int modules : MODULE_COUNTS) {
+            results.put(modules, measure(modules));
+        }
+
+        Path resultsFile = Path.of(System.getProperty("perf.results", "build/reports/perf/configuration.json"));
+        Path baselineFile = Path.of(System.getProperty("perf.baseline", "src/perfTest/baseline.json"));
+        TestBuilds.write(resultsFile, toJson(results));
+        if (Boolean.getBoolean("perf.update-baseline")) {
+            TestBuilds.write(baselineFile, toJson(results));
+            return;
+        }
+        if (!Files.isRegularFile(baselineFile)) {
+            fail("No baseline in " + baselineFile + ", create it with -Pperf.update-baseline");
+        }
+
+        Map<Integer, Measurement> baseline = fromJson(Files.readString(baselineFile));
+        List<String> regressions = new ArrayList<>();
+        results.forEach((modules, measured) -> {
+            String name = modules + " modules";
+            Measurement base = baseline.get(modules);
+            if (base == null) {
+                regressions.add(name + " missing in baseline");
+                return;
+            }
+            check(regressions, name + " configuration", measured.configurationMs(), base.configurationMs());
+            check(regressions, name + " cache store", measured.storeMs(), base.storeMs());
+            check(regressions, name + " cache load", measured.loadMs(), base.loadMs());
+            if (measured.realizedTasks() > base.realizedTasks()) {
+                regressions.add(name + " realized " + measured.realizedTasks() + " tasks, baseline "
+                        + base.realizedTasks());
+            }
+        });
+        assertTrue(regressions.isEmpty(), "Regressions against " + baselineFile + ": " + regressions);
+    }
+
+    private Measurement measure(int modules) throws IOException {
+        Path buildDir = workDir.resolve("modules-" + modules);
+        TestBuilds.writeMultiModuleBuild(
+                buildDir,
+                modules,
+                Map.of(
+                        "org.gradle.jvmargs", "-Xmx2g",
+                        "dk.mada.style.errorprone.enabled", "false",
+                        "dk.mada.style.null-checker.enabled", "false"));
+        GradleRunner runner = GradleRunner.create().withProjectDir(buildDir.toFile()).withPluginClasspath();
+        Path cacheDir = buildDir.resolve(".gradle/configuration-cache");
+        Path initScript = TestBuilds.writeRealizationInitScript(workDir);
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run(runner, "--no-configuration-cache");
+            deleteRecursively(cacheDir);
+            run(runner, "--configuration-cache");
+            run(runner, "--configuration-cache");
+        }
+
+        long[] configurationMs = new long[ITERATIONS];
+        long[] storeMs = new long[ITERATIONS];
+        long[] loadMs = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            configurationMs[i] = run(runner, "--no-configuration-cache");
+            deleteRecursively(cacheDir);
+            storeMs[i] = Math.max(0, run(runner, "--configuration-cache") - configurationMs[i]);
+            loadMs[i] = run(runner, "--configuration-cache");
+        }
+
+        // Counted in a separate run, so the init script output does not affect the timings
+        List<String> realized = TestBuilds.realizedTasks(
+                build(runner, "--no-configuration-cache", "--init-script", initScript.toString())
+                        .getOutput());
+
+        return new Measurement(median(configurationMs), median(storeMs), median(loadMs), realized.size());
+    }
+
+    private static long run(GradleRunner runner, String cacheArg) {
+        long start = System.nanoTime();
+        build(runner, cacheArg);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static BuildResult build(GradleRunner runner, String... extraArgs) {
+        List<String> args = new ArrayList<>(BUILD_ARGS);
+        args.addAll(List.of(extraArgs));
+        BuildResult result = runner.withArguments(args).build();
+        assertTrue(result.getOutput().contains("BUILD SUCCESSFUL"), result.getOutput());
+        return result;
+    }
+
+    private static void check(List<String> regressions, String name, long measured, long base) {
+        long limit = base * (100 + THRESHOLD_PERCENT) / 100;
+        if (measured > limit && measured - base > NOISE_FLOOR_MS) {
+            regressions.add(name + " took " + measured + "ms, baseline " + base + "ms");
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static String toJson(Map<Integer, Measurement> results) {
+        var sb = new StringBuilder("{");
+        String separator = "\n";
+        for (Map.Entry<Integer, Measurement> e : results.entrySet()) {
+            Measurement m = e.getValue();
+            sb.append(separator)
+                    .append("  \"modules-")
+                    .append(e.getKey())
+                    .append("\": {\"configurationMs\": ")
+                    .append(m.configurationMs())
+                    .append(", \"storeMs\": ")
+                    .append(m.storeMs())
+                    .append(", \"loadMs\": ")
+                    .append(m.loadMs())
+                    .append(", \"realizedTasks\": ")
+                    .append(m.realizedTasks())
+                    .append('}');
+            separator = ",\n";
+        }
+        return sb.append("\n}\n").toString();
+    }
+
+    private static Map<Integer, Measurement> fromJson(String json) {
+        Map<Integer, Measurement> result = new LinkedHashMap<>();
+        Matcher m = MEASUREMENT_PATTERN.matcher(json);
+        while (m.find()) {
+            result.put(
+                    Integer.parseInt(Objects.requireNonNull(m.group(1))),
+                    new Measurement(
+                            Long.parseLong(Objects.requireNonNull(m.group(2))),
+                            Long.parseLong(Objects.requireNonNull(m.group(3))),
+                            Long.parseLong(Objects.requireNonNull(m.group(4))),
+                            Integer.parseInt(Objects.requireNonNull(m.group(5)))));
+        }
+        return result;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path f : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(f);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package dk.mada.style.accept.perf;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dk.mada.style.fixture.TestBuilds;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Measures the configuration of a generated build with and without isolated projects.
+ *
+ * With isolated projects Gradle configures the projects in parallel. The build fails if the plugin accesses other
+ * projects' state, so this also verifies that the plugin is compatible with isolated projects.
+ *
+ * The configuration cache entry is deleted before each run, so all projects are configured. The median wall times
+ * are written to a JSON file.
+ */
+class IsolatedProjectsPerfTest {
+    /** The number of modules in the generated build. */
+    private static final int MODULES = 200;
+    /** The number of measured runs of each variant. */
+    private static final int ITERATIONS = Integer.getInteger("perf.iterations", 5);
+    /** The allowed slowdown of isolated projects relative to sequential configuration (in percent). */
+    private static final long THRESHOLD_PERCENT = Long.getLong("perf.threshold-percent", 25);
+    /** The number of warm-up runs of each variant. */
+    private static final int WARMUP_RUNS = 2;
+    /** The build arguments. */
+    private static final List<String> BUILD_ARGS =
+            List.of("assemble", "--dry-run", "--stacktrace", "--configuration-cache");
+    /** The property activating isolated projects. */
+    private static final String ISOLATED_PROJECTS_PROPERTY = "-Dorg.gradle.unsafe.isolated-projects=";
+
+    /** The directory the build is generated in. */
+    @TempDir
+    private Path workDir;
+
+    @Test
+    void isolatedProjectsConfigureInParallel() throws IOException {
+        TestBuilds.writeMultiModuleBuild(
+                workDir,
+                MODULES,
+                Map.of(
+                        "org.gradle.jvmargs", "-Xmx2g",
+                        "dk.mada.style.errorprone.enabled", "false",
+                        "dk.mada.style.null-checker.enabled", "false"));
+        GradleRunner runner = GradleRunner.create().withProjectDir(workDir.toFile()).withPluginClasspath();
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run(runner, false);
+            run(runner, true);
+        }
+        long[] sequentialMs = new long[ITERATIONS];
+        long[] isolatedMs = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            sequentialMs[i] = run(runner, false);
+            isolatedMs[i] = run(runner, true);
+        }
+        long sequential = median(sequentialMs);
+        long isolated = median(isolatedMs);
+
+        Path resultsFile = Path.of(
+                System.getProperty("perf.isolated-results", "build/reports/perf/isolated-projects.json"));
+        TestBuilds.write(
+                resultsFile,
+                "{\n  \"modules\": " + MODULES + ",\n  \"cores\": " + Runtime.getRuntime().availableProcessors()
+                        + ",\n  \"sequentialMs\": " + sequential + ",\n  \"isolatedMs\": " + isolated + "\n}\n");
+        System.out.println("Configuration of " + MODULES + " modules: " + sequential + "ms sequential, " + isolated
+                + "ms with isolated projects");
+
+        long limit = sequential * (100 + THRESHOLD_PERCENT) / 100;
+        assertTrue(
+                isolated <= limit,
+                "Isolated projects configuration took " + isolated + "ms, sequential " + sequential + "ms");
+    }
+
+    private long run(GradleRunner runner, boolean isolatedProjects) throws IOException {
+        deleteRecursively(workDir.resolve(".gradle/configuration-cache"));
+        List<String> args = new ArrayList<>(BUILD_ARGS);
+        args.add(ISOLATED_PROJECTS_PROPERTY + isolatedProjects);
+        long start = System.nanoTime();
+        BuildResult result = runner.withArguments(args).build();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(result.getOutput().contains("BUILD SUCCESSFUL"), result.getOutput());
+        return elapsedMs;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path f : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(f);
+            }
+        }
+    }
+}
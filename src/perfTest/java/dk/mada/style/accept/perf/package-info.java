@@ -0,0 +1,4 @@
+/**
+ * Performance tests of the plugin in generated builds.
+ */
+package dk.mada.style.accept.perf;
@@ -0,0 +1,170 @@
+package dk.mada.style.unit.config;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dk.mada.style.config.ConfigFileExtractor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+import org.gradle.api.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Stress tests concurrent extraction of configuration resources.
+ *
+ * Many threads, plugin classloaders and processes extract the same resource into the same mada-data directory at the
+ * same time. All must get the same file, with the complete content, and no temporary files may be left behind.
+ */
+class ConfigFileExtractorConcurrencyTest {
+    /** The resource to extract. */
+    private static final String RESOURCE = "checkstyle/checkstyle-mada.xml";
+    /** The number of concurrent extractions in each JVM. */
+    private static final int THREADS = 16;
+    /** The number of concurrent processes. */
+    private static final int PROCESSES = 4;
+    /** The number of rounds, each extracting to a new directory. */
+    private static final int ROUNDS = 5;
+    /** The package of the classes loaded separately by each plugin classloader. */
+    private static final String ISOLATED_PACKAGE = "dk.mada.style.config.";
+
+    /** The directory the Gradle home directories are made in. */
+    @TempDir
+    private Path workDir;
+
+    @Test
+    void threadsShareExtraction() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            Path gradleHomeDir = workDir.resolve("threads-" + round);
+            List<Callable<Path>> extractions = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                extractions.add(() -> new ConfigFileExtractor(SilentLogger.create(), gradleHomeDir)
+                        .getLocalConfigFileFromResource(RESOURCE));
+            }
+            assertExtracted(ExtractionProcess.runConcurrently(extractions));
+        }
+    }
+
+    /**
+     * Plugin classloaders each have their own copy of the extractor, so they do not share its in-JVM monitors. Their
+     * file locks overlap, which must be handled as contention.
+     */
+    @Test
+    void classloadersShareExtraction() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            Path gradleHomeDir = workDir.resolve("classloaders-" + round);
+            List<Callable<Path>> extractions = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                extractions.add(() -> {
+                    ClassLoader loader = new IsolatingClassLoader(ConfigFileExtractor.class.getClassLoader());
+                    Class<?> extractorClass = loader.loadClass(ConfigFileExtractor.class.getName());
+                    Object extractor = extractorClass
+                            .getConstructor(Logger.class, Path.class)
+                            .newInstance(SilentLogger.create(), gradleHomeDir);
+                    return (Path) extractorClass
+                            .getMethod("getLocalConfigFileFromResource", String.class)
+                            .invoke(extractor, RESOURCE);
+                });
+            }
+            assertExtracted(ExtractionProcess.runConcurrently(extractions));
+        }
+    }
+
+    @Test
+    void processesShareExtraction() throws Exception {
+        String java = ProcessHandle.current().info().command().orElseThrow();
+        String classPath = ManagementFactory.getRuntimeMXBean().getClassPath();
+        for (int round = 0; round < ROUNDS; round++) {
+            Path gradleHomeDir = workDir.resolve("processes-" + round);
+            List<Process> processes = new ArrayList<>();
+            for (int i = 0; i < PROCESSES; i++) {
+                processes.add(new ProcessBuilder(
+                                java,
+                                "-cp",
+                                classPath,
+                                ExtractionProcess.class.getName(),
+                                gradleHomeDir.toString(),
+                                RESOURCE,
+                                Integer.toString(THREADS))
+                        .redirectErrorStream(true)
+                        .start());
+            }
+
+            List<Path> extracted = new ArrayList<>();
+            for (Process p : processes) {
+                String output = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                assertEquals(0, p.waitFor(), output);
+                output.lines().map(Path::of).forEach(extracted::add);
+            }
+            assertEquals(PROCESSES * THREADS, extracted.size());
+            assertExtracted(extracted);
+        }
+    }
+
+    private static void assertExtracted(List<Path> files) throws IOException {
+        Set<Path> distinct = new HashSet<>(files);
+        assertEquals(1, distinct.size(), "Extracted files: " + distinct);
+        Path file = distinct.iterator().next();
+
+        assertArrayEquals(resourceContent(), Files.readAllBytes(file));
+        assertTrue(Files.exists(file.resolveSibling(file.getFileName() + ".valid")));
+        try (Stream<Path> siblings = Files.list(Objects.requireNonNull(file.getParent()))) {
+            List<Path> leftovers = siblings.filter(p -> p.toString().endsWith(".tmp")).toList();
+            assertTrue(leftovers.isEmpty(), "Left temporary files: " + leftovers);
+        }
+    }
+
+    private static byte[] resourceContent() throws IOException {
+        try (InputStream is = ConfigFileExtractor.class.getResourceAsStream("/config/" + RESOURCE)) {
+            assertNotNull(is);
+            return is.readAllBytes();
+        }
+    }
+
+    /**
+     * Loads its own copy of the configuration classes, like a separate plugin classloader.
+     */
+    private static final class IsolatingClassLoader extends ClassLoader {
+        IsolatingClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(ISOLATED_PACKAGE)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    try (InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                        if (is == null) {
+                            throw new ClassNotFoundException(name);
+                        }
+                        byte[] bytes = is.readAllBytes();
+                        c = defineClass(name, bytes, 0, bytes.length);
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+        }
+    }
+}
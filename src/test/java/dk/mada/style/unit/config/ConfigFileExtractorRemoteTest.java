@@ -0,0 +1,174 @@
+package dk.mada.style.unit.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dk.mada.style.config.ConfigFileExtractor;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests caching of remote configuration files, using a local stand-in for the HTTP server.
+ *
+ * Each check uses a new extractor, as an extractor only resolves a path once.
+ */
+class ConfigFileExtractorRemoteTest {
+    /** The address of the stub server. */
+    private static final String STUB_HOST = "127.0.0.1";
+    /** The path of the remote file. */
+    private static final String FILE_PATH = "/rules.xml";
+    /** A time-to-live longer than the test. */
+    private static final Duration LONG_TTL = Duration.ofHours(1);
+
+    /** The directory used as Gradle home. */
+    @TempDir
+    private Path gradleHomeDir;
+    /** The stub server. */
+    private HttpServer server;
+    /** The URL of the remote file. */
+    private String url;
+    /** The number of requests received by the stub server. */
+    private final AtomicInteger requests = new AtomicInteger();
+    /** The number of response bodies sent by the stub server. */
+    private final AtomicInteger bodies = new AtomicInteger();
+    /** The content served by the stub server. */
+    private volatile String content = "<rules version='1'/>";
+    /** The response status used instead of serving the content, or 0 to serve it. */
+    private volatile int failureStatus;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(STUB_HOST, 0), 0);
+        server.createContext(FILE_PATH, this::serve);
+        server.start();
+        url = "http://" + STUB_HOST + ":" + server.getAddress().getPort() + FILE_PATH;
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void cachedCopyIsUsedWithinTtl() throws IOException {
+        Path first = fetch(LONG_TTL);
+        Path second = fetch(LONG_TTL);
+
+        assertEquals(first, second);
+        assertEquals(content, Files.readString(second));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void unchangedFileIsRevalidatedWithoutBody() throws IOException {
+        fetch(Duration.ZERO);
+        Path revalidated = fetch(Duration.ZERO);
+
+        assertEquals(content, Files.readString(revalidated));
+        assertEquals(2, requests.get());
+        assertEquals(1, bodies.get());
+    }
+
+    @Test
+    void changedFileIsDownloadedAgain() throws IOException {
+        fetch(Duration.ZERO);
+        content = "<rules version='2'/>";
+        Path updated = fetch(Duration.ZERO);
+
+        assertEquals(content, Files.readString(updated));
+        assertEquals(2, bodies.get());
+    }
+
+    @Test
+    void cachedCopyIsUsedWhenServerFails() throws IOException {
+        String original = content;
+        fetch(Duration.ZERO);
+
+        failureStatus = 500;
+        assertEquals(original, Files.readString(fetch(Duration.ZERO)));
+
+        server.stop(0);
+        assertEquals(original, Files.readString(fetch(Duration.ZERO)));
+    }
+
+    @Test
+    void failureWithoutCachedCopyIsReported() {
+        failureStatus = 404;
+
+        assertThrows(IllegalStateException.class, () -> fetch(LONG_TTL));
+    }
+
+    @Test
+    void pinnedFileIsVerified() throws IOException {
+        String pinnedUrl = url + "#sha256=" + sha256(content);
+        Path pinned = newExtractor().getLocalFileFromConfigPath(pinnedUrl, LONG_TTL);
+        assertEquals(content, Files.readString(pinned));
+
+        // Once stored, the server is not used
+        server.stop(0);
+        assertEquals(pinned, newExtractor().getLocalFileFromConfigPath(pinnedUrl, LONG_TTL));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void pinnedFileWithOtherContentIsRejected() {
+        String pinnedUrl = url + "#sha256=" + sha256("other content");
+
+        ConfigFileExtractor extractor = newExtractor();
+        assertThrows(IllegalStateException.class, () -> extractor.getLocalFileFromConfigPath(pinnedUrl, LONG_TTL));
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            if (failureStatus != 0) {
+                exchange.sendResponseHeaders(failureStatus, -1);
+                return;
+            }
+            String etag = "\"" + sha256(content) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] body = content.getBytes(StandardCharsets.UTF_8);
+            bodies.incrementAndGet();
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    private Path fetch(Duration ttl) {
+        return newExtractor().getLocalFileFromConfigPath(url, ttl);
+    }
+
+    private ConfigFileExtractor newExtractor() {
+        return new ConfigFileExtractor(SilentLogger.create(), gradleHomeDir);
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to make checksum", e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package dk.mada.style.unit.config;
+
+import dk.mada.style.config.ConfigFileExtractor;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Extracts a configuration resource from many threads at once.
+ *
+ * This is run in separate processes by the stress test, printing the extracted files.
+ */
+final class ExtractionProcess {
+    private ExtractionProcess() {
+        // empty
+    }
+
+    /**
+     * Extracts a configuration resource.
+     *
+     * @param args the Gradle home directory, the resource path and the number of threads
+     * @throws Exception if the extraction fails
+     */
+    public static void main(String[] args) throws Exception {
+        Path gradleHomeDir = Path.of(args[0]);
+        String resource = args[1];
+        int threads = Integer.parseInt(args[2]);
+
+        List<Callable<Path>> extractions = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            extractions.add(() -> new ConfigFileExtractor(SilentLogger.create(), gradleHomeDir)
+                    .getLocalConfigFileFromResource(resource));
+        }
+        runConcurrently(extractions).forEach(System.out::println);
+    }
+
+    /**
+     * Runs tasks in separate threads, starting them at the same time.
+     *
+     * @param tasks the tasks to run
+     * @return the results of the tasks
+     * @throws InterruptedException if interrupted while waiting for the tasks
+     * @throws ExecutionException   if a task fails
+     */
+    static List<Path> runConcurrently(List<Callable<Path>> tasks) throws InterruptedException, ExecutionException {
+        var startGate = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newFixedThreadPool(tasks.size())) {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (Callable<Path> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    startGate.await();
+                    return task.call();
+                }));
+            }
+            startGate.countDown();
+
+            List<Path> results = new ArrayList<>();
+            for (Future<Path> f : futures) {
+                results.add(f.get());
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package dk.mada.style.unit.config;
+
+import java.lang.reflect.Proxy;
+import org.gradle.api.logging.Logger;
+
+/**
+ * Provides a Gradle logger that discards all messages.
+ *
+ * Gradle's own loggers are only available inside a build.
+ */
+final class SilentLogger {
+    private SilentLogger() {
+        // empty
+    }
+
+    /** {@return a logger with all levels disabled} */
+    static Logger create() {
+        return (Logger) Proxy.newProxyInstance(
+                Logger.class.getClassLoader(),
+                new Class<?>[] {Logger.class},
+                (_, method, _) -> method.getReturnType() == boolean.class ? Boolean.FALSE : null);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Unit tests of the plugin configuration.
+ */
+package dk.mada.style.unit.config;
@@ -0,0 +1,26 @@
+package dk.mada.style.unit.report;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import dk.mada.style.report.JsonStrings;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests quoting of JSON string values.
+ */
+class JsonStringsTest {
+    @Test
+    void plainTextIsQuoted() {
+        assertEquals("\":app:sub\"", JsonStrings.quote(":app:sub"));
+    }
+
+    @Test
+    void quotesAndBackslashesAreEscaped() {
+        assertEquals("\"C:\\\\dir\\\\\\\"name\\\"\"", JsonStrings.quote("C:\\dir\\\"name\""));
+    }
+
+    @Test
+    void controlCharactersAreEscaped() {
+        assertEquals("\"a\\nb\\rc\\td\\u0001e\\u001f\"", JsonStrings.quote("a\nb\rc\td\u0001e\u001f"));
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Unit tests of the reporting of the cost of the style tools.
+ */
+package dk.mada.style.unit.report;
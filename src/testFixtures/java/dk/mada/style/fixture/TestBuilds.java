@@ -0,0 +1,158 @@
+package dk.mada.style.fixture;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Generates Gradle builds applying the plugin.
+ *
+ * The generated modules are java projects applying the plugin. Each module (except the first) depends on another
+ * module, so the modules form a tree. The multi-module builds do not declare any repositories.
+ *
+ * The single-module builds have many classes, and resolve the tools from Maven Central.
+ */
+public final class TestBuilds {
+    /** The prefix of the output lines listing realized tasks. */
+    private static final String REALIZED_PREFIX = "realized-task: ";
+    /** The init script listing the realized tasks. */
+    private static final String REALIZATION_INIT_SCRIPT = """
+            gradle.beforeProject { p ->
+                p.tasks.configureEach { t -> println('%s' + t.path) }
+            }
+            """.formatted(REALIZED_PREFIX);
+
+    private TestBuilds() {
+        // empty
+    }
+
+    /**
+     * Writes a multi-module build.
+     *
+     * @param dir              the directory to write the build to
+     * @param modules          the number of modules
+     * @param gradleProperties the properties to write to the root gradle.properties file
+     * @throws IOException if the build cannot be written
+     */
+    public static void writeMultiModuleBuild(Path dir, int modules, Map<String, String> gradleProperties)
+            throws IOException {
+        var settings = new StringBuilder("rootProject.name = 'generated'\n");
+        for (int i = 0; i < modules; i++) {
+            settings.append("include 'm").append(i).append("'\n");
+            writeModule(dir.resolve("m" + i), i);
+        }
+        write(dir.resolve("settings.gradle"), settings.toString());
+        write(dir.resolve("build.gradle"), "");
+
+        writeProperties(dir, gradleProperties);
+    }
+
+    /**
+     * Writes a single-module build with many classes.
+     *
+     * @param dir              the directory to write the build to
+     * @param classes          the number of classes
+     * @param gradleProperties the properties to write to the gradle.properties file
+     * @throws IOException if the build cannot be written
+     */
+    public static void writeSingleModuleBuild(Path dir, int classes, Map<String, String> gradleProperties)
+            throws IOException {
+        write(dir.resolve("settings.gradle"), "rootProject.name = 'generated'\n");
+        write(dir.resolve("build.gradle"), """
+                plugins {
+                    id 'java'
+                    id 'dk.mada.style'
+                }
+
+                repositories {
+                    mavenCentral()
+                }
+                """);
+        for (int i = 0; i < classes; i++) {
+            writeClass(dir, "generated.classes", "Class" + i);
+        }
+        writeProperties(dir, gradleProperties);
+    }
+
+    private static void writeProperties(Path dir, Map<String, String> gradleProperties) throws IOException {
+        var properties = new StringBuilder();
+        new TreeMap<>(gradleProperties)
+                .forEach((k, v) -> properties.append(k).append(" = ").append(v).append('\n'));
+        write(dir.resolve("gradle.properties"), properties.toString());
+    }
+
+    private static void writeModule(Path moduleDir, int module) throws IOException {
+        var build = new StringBuilder("""
+                plugins {
+                    id 'java'
+                    id 'dk.mada.style'
+                }
+                """);
+        if (module > 0) {
+            build.append("\ndependencies {\n    implementation project(':m")
+                    .append((module - 1) / 2)
+                    .append("')\n}\n");
+        }
+        write(moduleDir.resolve("build.gradle"), build.toString());
+
+        writeClass(moduleDir, "generated.m" + module, "Module" + module);
+    }
+
+    private static void writeClass(Path moduleDir, String packageName, String className) throws IOException {
+        write(
+                moduleDir.resolve("src/main/java/" + packageName.replace('.', '/') + "/" + className + ".java"),
+                "package " + packageName + ";\n\n"
+                        + "/** A generated class. */\n"
+                        + "public final class " + className + " {\n"
+                        + "    private " + className + "() {\n"
+                        + "        // empty\n"
+                        + "    }\n"
+                        + "}\n");
+    }
+
+    /**
+     * Writes an init script listing the realized tasks in the build output.
+     *
+     * @param dir the directory to write the init script to
+     * @return the init script file
+     * @throws IOException if the init script cannot be written
+     * @see #realizedTasks(String)
+     */
+    public static Path writeRealizationInitScript(Path dir) throws IOException {
+        Path initScript = dir.resolve("realization.gradle");
+        write(initScript, REALIZATION_INIT_SCRIPT);
+        return initScript;
+    }
+
+    /**
+     * Finds the realized tasks in the output of a build using the realization init script.
+     *
+     * @param output the build output
+     * @return the paths of the realized tasks
+     */
+    public static List<String> realizedTasks(String output) {
+        return output.lines()
+                .filter(l -> l.startsWith(REALIZED_PREFIX))
+                .map(l -> l.substring(REALIZED_PREFIX.length()))
+                .toList();
+    }
+
+    /**
+     * Writes a file, creating its parent directories.
+     *
+     * @param file    the file to write
+     * @param content the file content
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, String content) throws IOException {
+        Path parent = file.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Fixtures shared by the test suites.
+ */
+package dk.mada.style.fixture;